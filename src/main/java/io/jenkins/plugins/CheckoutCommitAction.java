@@ -0,0 +1,47 @@
+package io.jenkins.plugins;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.util.List;
+
+/**
+ * The commit a build checked out, recorded by {@link CommitCheckoutListener} right after the
+ * checkout so the deploy does not need the workspace when the build completes.
+ *
+ * Saved with the build, so it is small: the SHA, the branch and the commit's metadata.
+ */
+public class CheckoutCommitAction extends InvisibleAction {
+
+    public final String sha;
+    public final String branch;
+    // Null for Pipelines, the commit is read when opslevelDeploy runs
+    public final CommitRecord record;
+
+    public CheckoutCommitAction(String sha, String branch, CommitRecord record) {
+        this.sha = sha;
+        this.branch = branch;
+        this.record = record;
+    }
+
+    /**
+     * @return the checkout of {@code sha}, null if the build did not record one
+     */
+    static CheckoutCommitAction find(Run<?, ?> build, String sha) {
+        // A build can check out more than one repository
+        for (CheckoutCommitAction checkout : build.getActions(CheckoutCommitAction.class)) {
+            if (checkout.sha.equalsIgnoreCase(sha)) {
+                return checkout;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the build's most recent checkout, null if it did not record one
+     */
+    static CheckoutCommitAction last(Run<?, ?> build) {
+        List<CheckoutCommitAction> checkouts = build.getActions(CheckoutCommitAction.class);
+        return checkouts.isEmpty() ? null : checkouts.get(checkouts.size() - 1);
+    }
+}
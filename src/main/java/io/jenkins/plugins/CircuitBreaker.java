@@ -0,0 +1,195 @@
+package io.jenkins.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling an OpsLevel endpoint that keeps failing or hanging.
+ *
+ * The breaker keeps the outcome of the last {@code windowSize} calls. Once at least
+ * {@code minimumCalls} are recorded and either the failure rate or the slow-call rate reaches
+ * its threshold, the breaker opens and rejects calls outright for {@code openDurationMillis}.
+ * It then lets {@code halfOpenCalls} trial calls through: one failure opens it again, all of
+ * them succeeding closes it.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public static class Settings {
+        final int failureRateThreshold;
+        final int slowCallRateThreshold;
+        final long slowCallDurationNanos;
+        final int windowSize;
+        final int minimumCalls;
+        final long openDurationNanos;
+        final int halfOpenCalls;
+
+        public Settings(int failureRateThreshold, int slowCallRateThreshold, long slowCallDurationMillis,
+                        int windowSize, int minimumCalls, long openDurationMillis, int halfOpenCalls) {
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMillis);
+            this.windowSize = Math.max(1, windowSize);
+            this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+            this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+            this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        }
+    }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private byte[] window = new byte[0];
+    private int position;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private int trialsPermitted;
+    private int trialsSucceeded;
+    private long openedCount;
+    private long halfOpenedCount;
+    private long closedCount;
+    private long rejectedCount;
+
+    public CircuitBreaker(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return false if the call must not be made; a true answer must be followed by
+     *         {@link #onResult} or {@link #releasePermission}
+     */
+    public synchronized boolean tryAcquirePermission(Settings settings) {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < settings.openDurationNanos) {
+                rejectedCount++;
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (trialsPermitted < settings.halfOpenCalls) {
+            trialsPermitted++;
+            return true;
+        }
+        rejectedCount++;
+        return false;
+    }
+
+    /**
+     * Gives back a permission whose call was never made.
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && trialsPermitted > 0) {
+            trialsPermitted--;
+        }
+    }
+
+    public synchronized void onResult(Settings settings, boolean failed, long durationNanos) {
+        boolean slow = durationNanos >= settings.slowCallDurationNanos;
+        switch (state) {
+            case HALF_OPEN:
+                if (failed || slow) {
+                    transitionTo(State.OPEN);
+                } else if (++trialsSucceeded >= settings.halfOpenCalls) {
+                    transitionTo(State.CLOSED);
+                }
+                return;
+            case OPEN:
+                // A call that started before the breaker opened
+                return;
+            default:
+                record(settings, (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+                if (recorded >= settings.minimumCalls
+                    && (failures * 100 >= settings.failureRateThreshold * recorded
+                        || slowCalls * 100 >= settings.slowCallRateThreshold * recorded)) {
+                    transitionTo(State.OPEN);
+                }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return percentage of failed calls in the window, or -1 until enough calls are recorded
+     */
+    public synchronized int getFailureRate() {
+        return recorded == 0 ? -1 : failures * 100 / recorded;
+    }
+
+    public synchronized int getSlowCallRate() {
+        return recorded == 0 ? -1 : slowCalls * 100 / recorded;
+    }
+
+    public synchronized long getOpenedCount() {
+        return openedCount;
+    }
+
+    public synchronized long getHalfOpenedCount() {
+        return halfOpenedCount;
+    }
+
+    public synchronized long getClosedCount() {
+        return closedCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    private void record(Settings settings, byte outcome) {
+        if (window.length != settings.windowSize) {
+            resetWindow(settings.windowSize);
+        }
+        if (recorded == window.length) {
+            byte evicted = window[position];
+            failures -= evicted & FAILED;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            recorded++;
+        }
+        window[position] = outcome;
+        failures += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+        position = (position + 1) % window.length;
+    }
+
+    private void resetWindow(int size) {
+        window = new byte[size];
+        position = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void transitionTo(State next) {
+        state = next;
+        trialsPermitted = 0;
+        trialsSucceeded = 0;
+        switch (next) {
+            case OPEN:
+                openedAt = System.nanoTime();
+                openedCount++;
+                break;
+            case HALF_OPEN:
+                halfOpenedCount++;
+                break;
+            default:
+                resetWindow(window.length);
+                closedCount++;
+        }
+    }
+}
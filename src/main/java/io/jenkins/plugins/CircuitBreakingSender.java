@@ -0,0 +1,115 @@
+package io.jenkins.plugins;
+
+import okhttp3.HttpUrl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Guards each delivery attempt with a {@link CircuitBreaker} per webhook host.
+ *
+ * While a breaker is open the attempt fails immediately with a 503, which the retry and
+ * outbox stages treat like any other transient failure.
+ */
+public class CircuitBreakingSender implements DeploySender {
+
+    private final DeploySender downstream;
+    private final Supplier<CircuitBreaker.Settings> settings;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakingSender(DeploySender downstream, Supplier<CircuitBreaker.Settings> settings) {
+        this.downstream = downstream;
+        this.settings = settings;
+    }
+
+    /**
+     * Makes a single attempt on the calling thread, for a build that waits on its deploy.
+     */
+    public interface Attempt {
+        DeliveryResult send(DeployEvent event) throws IOException;
+    }
+
+    @Override
+    public CompletableFuture<DeliveryResult> send(DeployEvent event) {
+        CircuitBreaker.Settings current = settings.get();
+        CircuitBreaker breaker = breakerFor(event.webHookUrl);
+        if (!breaker.tryAcquirePermission(current)) {
+            CompletableFuture<DeliveryResult> rejected = new CompletableFuture<>();
+            rejected.complete(openResult(breaker));
+            return rejected;
+        }
+
+        CompletableFuture<DeliveryResult> sent;
+        try {
+            sent = downstream.send(event);
+        } catch (RuntimeException e) {
+            breaker.releasePermission();
+            throw e;
+        }
+        if (sent == null) {
+            breaker.releasePermission();
+            return null;
+        }
+        sent.whenComplete((delivered, failure) -> record(breaker, current, delivered, failure != null));
+        return sent;
+    }
+
+    /**
+     * Makes the attempt if the breaker for the event's host lets it through.
+     *
+     * @return what OpsLevel answered, or null without calling it if the breaker is open
+     */
+    public DeliveryResult sendNow(DeployEvent event, Attempt attempt) throws IOException {
+        CircuitBreaker.Settings current = settings.get();
+        CircuitBreaker breaker = breakerFor(event.webHookUrl);
+        if (!breaker.tryAcquirePermission(current)) {
+            return null;
+        }
+
+        boolean recorded = false;
+        try {
+            DeliveryResult delivered;
+            try {
+                delivered = attempt.send(event);
+            } catch (IOException e) {
+                record(breaker, current, null, true);
+                recorded = true;
+                throw e;
+            }
+            record(breaker, current, delivered, false);
+            recorded = true;
+            return delivered;
+        } finally {
+            if (!recorded) {
+                // Says nothing about the endpoint, but a half-open breaker must not keep waiting for this call
+                breaker.releasePermission();
+            }
+        }
+    }
+
+    private static void record(CircuitBreaker breaker, CircuitBreaker.Settings current,
+                               DeliveryResult delivered, boolean failed) {
+        // Only the time spent on the wire counts as slow, not the wait in OkHttp's queue
+        long duration = delivered == null ? 0 : Math.max(0, delivered.durationNanos);
+        breaker.onResult(current, failed || delivered.isTransient(), duration);
+    }
+
+    public CircuitBreaker breakerFor(String webHookUrl) {
+        HttpUrl url = HttpUrl.parse(webHookUrl);
+        String host = url == null ? webHookUrl : url.host() + ":" + url.port();
+        return breakers.computeIfAbsent(host, CircuitBreaker::new);
+    }
+
+    public List<CircuitBreaker> getBreakers() {
+        return new ArrayList<>(breakers.values());
+    }
+
+    public static DeliveryResult openResult(CircuitBreaker breaker) {
+        return new DeliveryResult(503, "Circuit breaker for " + breaker.getName() + " is open");
+    }
+}
@@ -0,0 +1,271 @@
+package io.jenkins.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Least recently used commits by SHA, so deploying the same commit again (to another
+ * environment, from a matrix child or a rerun) does not read it from the workspace again.
+ *
+ * Commits never change, so entries are only ever evicted for space. Lookups take no lock: every
+ * entry carries the tick of its last use, and only a put that overflows the cache scans for the
+ * eldest one. The cache is saved to a file in the background once enough commits were added or
+ * a while after the last change, again by {@link #close()}, and read back when created, which
+ * keeps it warm across restarts and crashes.
+ */
+public class CommitCache implements Closeable {
+
+    private static final int MAGIC = 0x4f4c4343;
+    private static final int VERSION = 1;
+    private static final int SAVE_AFTER_CHANGES = 50;
+    private static final long SAVE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Logger log = LoggerFactory.getLogger(CommitCache.class);
+
+    private final File file;
+    private final IntSupplier capacity;
+    private final int saveAfterChanges;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    // Held while evicting, so two puts don't both evict for the same overflow
+    private final Object evictionLock = new Object();
+    // Puts since the last save started
+    private final AtomicInteger changes = new AtomicInteger();
+    private final AtomicBoolean saveQueued = new AtomicBoolean();
+    private final ScheduledExecutorService writer;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Entry {
+        final CommitRecord commit;
+        volatile long lastUsed;
+
+        Entry(CommitRecord commit, long lastUsed) {
+            this.commit = commit;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    public CommitCache(File file, IntSupplier capacity) {
+        this(file, capacity, SAVE_AFTER_CHANGES, SAVE_INTERVAL_MILLIS);
+    }
+
+    CommitCache(File file, IntSupplier capacity, int saveAfterChanges, long saveIntervalMillis) {
+        this.file = file;
+        this.capacity = capacity;
+        this.saveAfterChanges = Math.max(1, saveAfterChanges);
+        load();
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "OpsLevel commit cache writer");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.scheduleWithFixedDelay(this::saveIfChanged, saveIntervalMillis, saveIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public CommitRecord get(String sha) {
+        Entry entry = entries.get(sha.toLowerCase());
+        if (entry != null) {
+            entry.lastUsed = clock.incrementAndGet();
+            hits.increment();
+            return entry.commit;
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(CommitRecord commit) {
+        add(commit);
+        if (changes.incrementAndGet() >= saveAfterChanges) {
+            requestSave();
+        }
+    }
+
+    private void add(CommitRecord commit) {
+        entries.put(commit.sha.toLowerCase(), new Entry(commit, clock.incrementAndGet()));
+        // Also trims after the capacity was lowered
+        if (entries.size() > Math.max(0, capacity.getAsInt())) {
+            evict();
+        }
+    }
+
+    // Only after a commit was read from a workspace, which takes far longer than the scan
+    private void evict() {
+        synchronized (evictionLock) {
+            while (entries.size() > Math.max(0, capacity.getAsInt())) {
+                Map.Entry<String, Entry> eldest = null;
+                for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                    if (eldest == null || candidate.getValue().lastUsed < eldest.getValue().lastUsed) {
+                        eldest = candidate;
+                    }
+                }
+                if (eldest == null) {
+                    return;
+                }
+                if (entries.remove(eldest.getKey(), eldest.getValue())) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity.getAsInt();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return hits as a percentage of lookups, -1 before the first lookup
+     */
+    public int getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? -1 : (int) (hit * 100 / total);
+    }
+
+    /**
+     * Writes the cache, least recently used first, to a temporary file that then replaces the old one.
+     */
+    public synchronized void save() throws IOException {
+        changes.set(0);
+        List<Entry> snapshot = new ArrayList<>(entries.values());
+        snapshot.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Entry entry : snapshot) {
+                CommitRecord commit = entry.commit;
+                writeString(out, commit.sha);
+                writeString(out, commit.subject);
+                writeString(out, commit.authorName);
+                writeString(out, commit.authorEmail);
+                out.writeLong(commit.authorTime);
+                writeString(out, commit.committerName);
+                writeString(out, commit.committerEmail);
+                out.writeLong(commit.commitTime);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stops saving in the background and saves one last time.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdownNow();
+        save();
+    }
+
+    private void requestSave() {
+        if (!saveQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            writer.execute(() -> {
+                saveQueued.set(false);
+                saveIfChanged();
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed, which saved
+            saveQueued.set(false);
+        }
+    }
+
+    private void saveIfChanged() {
+        if (changes.get() == 0) {
+            return;
+        }
+        try {
+            save();
+        } catch (IOException e) {
+            // Tried again after the next change
+            log.warn("Could not save the commit cache {}: {}", file, e.toString());
+        }
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Ignoring {}, it is not a commit cache this version can read", file);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                add(new CommitRecord(readString(in), readString(in), readString(in), readString(in), in.readLong(),
+                    readString(in), readString(in), in.readLong()));
+            }
+        } catch (IOException e) {
+            // Only a cache, start over
+            log.warn("Could not read the commit cache {}: {}", file, e.toString());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 1024 * 1024) {
+            throw new IOException("Corrupt entry");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,63 @@
+package io.jenkins.plugins;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.SCMListener;
+import hudson.scm.SCM;
+import hudson.scm.SCMRevisionState;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the checked out commit while the workspace is known to hold it, before any build step
+ * can change or wipe it, and records it on the build as a {@link CheckoutCommitAction}.
+ *
+ * Pipelines only get the SHA and branch recorded: a {@code checkout} step does not put
+ * {@code GIT_COMMIT} into the environment of later steps, so this is how {@code opslevelDeploy}
+ * finds the commit. Whether a Pipeline deploys is not known up front, so the commit itself is
+ * only read when the step runs.
+ */
+@Extension
+public class CommitCheckoutListener extends SCMListener {
+
+    private static final Logger log = LoggerFactory.getLogger(CommitCheckoutListener.class);
+
+    @Override
+    public void onCheckout(Run<?, ?> build, SCM scm, FilePath workspace, TaskListener listener,
+                           File changelogFile, SCMRevisionState pollingBaseline) throws Exception {
+        boolean freestyle = build instanceof AbstractBuild;
+        if (freestyle && JobListener.GetWebHookPublishers((AbstractBuild) build).isEmpty()) {
+            // Nothing will be published for this build
+            return;
+        }
+
+        // The git plugin has just recorded what it checked out, other SCMs leave this empty
+        Map<String, String> env = new HashMap<>();
+        scm.buildEnvironment(build, env);
+        String sha = env.get("GIT_COMMIT");
+        if (sha == null || CheckoutCommitAction.find(build, sha) != null) {
+            return;
+        }
+        if (!freestyle) {
+            build.addAction(new CheckoutCommitAction(sha, env.get("GIT_BRANCH"), null));
+            return;
+        }
+
+        CommitRecord record = ExtensionList.lookupSingleton(JobListener.class).lookupCommit(build, workspace, sha);
+        if (record == null) {
+            // The deploy tries again once the build completes
+            log.debug("Could not read commit {} of {} at checkout", sha, build.getFullDisplayName());
+            return;
+        }
+        build.addAction(new CheckoutCommitAction(sha, env.get("GIT_BRANCH"), record));
+    }
+}
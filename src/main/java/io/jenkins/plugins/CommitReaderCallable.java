@@ -0,0 +1,51 @@
+package io.jenkins.plugins;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Looks up a commit in a workspace on whichever machine holds it, so on distributed builds the
+ * reading (and the git process, if one is needed) happens on the agent and only the small
+ * {@link CommitRecord} comes back to the controller.
+ */
+public class CommitReaderCallable extends MasterToSlaveFileCallable<CommitRecord> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(CommitReaderCallable.class);
+
+    private final String sha;
+    private final long gitTimeoutMillis;
+    private final int gitMaxOutputBytes;
+
+    public CommitReaderCallable(String sha, long gitTimeoutMillis, int gitMaxOutputBytes) {
+        this.sha = sha;
+        this.gitTimeoutMillis = gitTimeoutMillis;
+        this.gitMaxOutputBytes = gitMaxOutputBytes;
+    }
+
+    @Override
+    public CommitRecord invoke(File workTree, VirtualChannel channel) throws IOException, InterruptedException {
+        try {
+            // Reading the objects in process saves forking git, which also may not be installed
+            File gitDir = GitObjectReader.findGitDir(workTree);
+            if (gitDir != null) {
+                try (GitObjectReader objects = new GitObjectReader(gitDir)) {
+                    CommitRecord commit = objects.readCommit(sha);
+                    if (commit != null) {
+                        return commit;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not read {} from {} directly, asking git: {}", sha, workTree, e.toString());
+        }
+        return new GitCommandReader(gitTimeoutMillis, gitMaxOutputBytes).read(workTree, sha);
+    }
+}
@@ -0,0 +1,40 @@
+package io.jenkins.plugins;
+
+import java.io.Serializable;
+
+/**
+ * The metadata of one commit that goes into a deploy: its subject line, author and committer.
+ *
+ * Times are seconds since the epoch, as git stores them. Records are sent back from agents, so
+ * they only hold what the payload needs.
+ */
+public class CommitRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public final String sha;
+    public final String subject;
+    public final String authorName;
+    public final String authorEmail;
+    public final long authorTime;
+    public final String committerName;
+    public final String committerEmail;
+    public final long commitTime;
+
+    public CommitRecord(String sha, String subject, String authorName, String authorEmail, long authorTime,
+                        String committerName, String committerEmail, long commitTime) {
+        this.sha = sha;
+        this.subject = subject;
+        this.authorName = authorName;
+        this.authorEmail = authorEmail;
+        this.authorTime = authorTime;
+        this.committerName = committerName;
+        this.committerEmail = committerEmail;
+        this.commitTime = commitTime;
+    }
+
+    @Override
+    public String toString() {
+        return sha + " " + subject;
+    }
+}
@@ -0,0 +1,185 @@
+package io.jenkins.plugins;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+
+/**
+ * Records every call made with the shared OkHttp client into the {@link EndpointStats} of its host,
+ * for a deploy published by a build into its {@link DeliveryRecordAction.Delivery}, and as a
+ * {@link FlightEvents#HTTP} event while Flight Recorder is recording.
+ *
+ * OkHttp creates one listener per call, so the stage start times need no synchronization.
+ * The {@link Timing} tagged on a request is the exception, it is read by the thread handling the response.
+ */
+public class DeliveryEventListener extends EventListener {
+
+    public static final EventListener.Factory FACTORY = call -> new DeliveryEventListener(
+        DeliveryMetrics.get().getEndpoint(call.request().url().host()),
+        call.request().tag(DeployEvent.class),
+        call.request().tag(Timing.class));
+
+    /**
+     * How long a call spent talking to the server, for {@link DeliveryResult#durationNanos}.
+     *
+     * {@code callStart} fires when a background call is enqueued, so the clock starts when the call
+     * first looks for a connection instead, which is after it has left OkHttp's dispatcher queue.
+     */
+    static final class Timing {
+        private volatile long start;
+        private volatile long end;
+
+        void started() {
+            if (start == 0) {
+                start = System.nanoTime();
+            }
+        }
+
+        void ended() {
+            end = System.nanoTime();
+        }
+
+        /**
+         * @return -1 if the call never got a connection
+         */
+        long durationNanos() {
+            long started = start;
+            if (started == 0) {
+                return -1;
+            }
+            long ended = end;
+            // The response is read before callEnd fires for it
+            return (ended == 0 ? System.nanoTime() : ended) - started;
+        }
+    }
+
+    private final EndpointStats endpoint;
+    // Null for requests that are not deploys
+    private final DeployEvent event;
+    // Null for batches and deploys recovered from the outbox
+    private final DeliveryRecordAction.Delivery delivery;
+    // Null for requests not made by DeployDispatcher
+    private final Timing timing;
+    private Object jfr;
+    private long bytesSent;
+    private int status;
+    private long start;
+    private long connectStart;
+    private long bodyStart;
+    private long requestEnd;
+
+    DeliveryEventListener(EndpointStats endpoint, DeployEvent event, Timing timing) {
+        this.endpoint = endpoint;
+        this.event = event;
+        this.delivery = event == null ? null : event.delivery;
+        this.timing = timing;
+    }
+
+    @Override
+    public void callStart(Call call) {
+        if (event != null) {
+            jfr = FlightEvents.begin(FlightEvents.HTTP);
+        }
+        start = System.nanoTime();
+        if (delivery != null) {
+            delivery.onAttempt();
+        }
+    }
+
+    @Override
+    public void proxySelectStart(Call call, HttpUrl url) {
+        if (timing != null) {
+            timing.started();
+        }
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        // The only event before the request for a pooled connection
+        if (timing != null) {
+            timing.started();
+        }
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        if (delivery != null) {
+            // Includes the TLS handshake
+            delivery.onConnected(System.nanoTime() - connectStart);
+        }
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyStart(Call call) {
+        bodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        requestEnd = System.nanoTime();
+        bytesSent = byteCount;
+        endpoint.recordBytesSent(byteCount);
+        if (delivery != null) {
+            // The payload is streamed, so this is serializing it into the connection
+            delivery.onSerialized(requestEnd - bodyStart);
+        }
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        status = response.code();
+        endpoint.recordStatus(response.code());
+        if (delivery != null) {
+            delivery.onFirstByte(System.nanoTime() - requestEnd, response.code());
+        }
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        if (timing != null) {
+            timing.ended();
+        }
+        endpoint.recordLatency(System.nanoTime() - start);
+        commitFlightEvent(call);
+        if (delivery != null) {
+            delivery.onFinished(null);
+        }
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        if (timing != null) {
+            timing.ended();
+        }
+        endpoint.recordFailure();
+        endpoint.recordLatency(System.nanoTime() - start);
+        commitFlightEvent(call);
+        if (delivery != null) {
+            delivery.onFinished(ioe);
+        }
+    }
+
+    private void commitFlightEvent(Call call) {
+        if (jfr != null) {
+            FlightEvents.commitHttp(jfr, event.jobName, event.buildNumber, bytesSent, call.request().url().host(), status);
+        }
+    }
+}
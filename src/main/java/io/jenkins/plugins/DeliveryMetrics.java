@@ -0,0 +1,142 @@
+package io.jenkins.plugins;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters for the whole delivery pipeline, from resolving a build's environment to
+ * OpsLevel's response.
+ *
+ * Recording is a {@link LongAdder} increment or a {@link LatencyHistogram} bucket increment, so
+ * build threads and OkHttp callbacks never contend on a lock. Queue depths are read from the
+ * delivery stages when asked for, see {@link JobListener}.
+ */
+public final class DeliveryMetrics {
+
+    private static final DeliveryMetrics INSTANCE = new DeliveryMetrics();
+
+    private final LatencyHistogram environment = new LatencyHistogram();
+    private final LatencyHistogram gitLookup = new LatencyHistogram();
+    private final LatencyHistogram serialization = new LatencyHistogram();
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+    private final LatencyHistogram heldOnCompleted = new LatencyHistogram();
+    private final LatencyHistogram heldOnFinalized = new LatencyHistogram();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    private final ConcurrentHashMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    private DeliveryMetrics() {
+    }
+
+    public static DeliveryMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Resolving the variables of a build, once per build however many targets it has.
+     */
+    public LatencyHistogram getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Reading a commit that was not cached, on the agent holding the workspace.
+     */
+    public LatencyHistogram getGitLookup() {
+        return gitLookup;
+    }
+
+    /**
+     * Writing a payload into a request. The body is streamed, so this includes writing to the socket.
+     */
+    public LatencyHistogram getSerialization() {
+        return serialization;
+    }
+
+    /**
+     * From handing a request to OkHttp to having read OpsLevel's response, for every attempt.
+     */
+    public LatencyHistogram getRoundTrip() {
+        return roundTrip;
+    }
+
+    public LatencyHistogram getHeldOnCompleted() {
+        return heldOnCompleted;
+    }
+
+    public LatencyHistogram getHeldOnFinalized() {
+        return heldOnFinalized;
+    }
+
+    /**
+     * Every timer by metric name, in pipeline order.
+     */
+    public Map<String, LatencyHistogram> getTimers() {
+        Map<String, LatencyHistogram> timers = new LinkedHashMap<>();
+        timers.put("held.onCompleted", heldOnCompleted);
+        timers.put("held.onFinalized", heldOnFinalized);
+        timers.put("environment", environment);
+        timers.put("git.lookup", gitLookup);
+        timers.put("serialization", serialization);
+        timers.put("http.roundtrip", roundTrip);
+        return timers;
+    }
+
+    /**
+     * @return the statistics of an OpsLevel host, created on its first request
+     */
+    public EndpointStats getEndpoint(String host) {
+        EndpointStats endpoint = endpoints.get(host);
+        if (endpoint == null) {
+            endpoint = endpoints.computeIfAbsent(host, EndpointStats::new);
+        }
+        return endpoint;
+    }
+
+    public Collection<EndpointStats> getEndpoints() {
+        return endpoints.values();
+    }
+
+    public void onSent() {
+        sent.increment();
+    }
+
+    public void onFailed() {
+        failed.increment();
+    }
+
+    public void onRetried() {
+        retried.increment();
+    }
+
+    public void onAbandoned() {
+        abandoned.increment();
+    }
+
+    // Attempts answered with a 2xx
+    public long getSent() {
+        return sent.sum();
+    }
+
+    // Attempts that failed with a network error or a non 2xx answer
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    // Attempts scheduled again after a failure
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    // Deploys given up on once their retry deadline passed
+    public long getAbandoned() {
+        return abandoned.sum();
+    }
+}
@@ -0,0 +1,345 @@
+package io.jenkins.plugins;
+
+import hudson.XmlFile;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * What happened to the deploys of one build: for every target its dedup_id, how many attempts
+ * were made, OpsLevel's last answer and where the time went, from resolving the environment to
+ * the first byte of the response.
+ *
+ * Only the build's own timings are saved with the build. The deliveries are kept next to it in
+ * {@value #FILE}, written as attempts finish (often after the build), and only read when the
+ * build's page is shown. Writes happen on a single background thread, never on the OkHttp thread
+ * that reports an attempt, and updates made while a write is pending go out with it. A delivery only holds on to that file, not the build, so a deploy
+ * waiting for a retry does not keep its build in memory.
+ */
+public class DeliveryRecordAction implements RunAction2 {
+
+    static final String FILE = "opslevel-delivery.xml";
+
+    private static final Logger log = LoggerFactory.getLogger(DeliveryRecordAction.class);
+
+    // Held while adding the action, a lock on the build itself would be shared with Jenkins
+    private static final Object ATTACH_LOCK = new Object();
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "OpsLevel delivery record writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // -1 when not measured, e.g. the environment of a Pipeline step is handed to it
+    private long envNanos = -1;
+    private long gitNanos = -1;
+
+    private transient Run<?, ?> run;
+    private transient volatile Store store;
+
+    /**
+     * @return the record of the build, added the first time one of its deploys is published
+     */
+    static DeliveryRecordAction of(Run<?, ?> run) {
+        // Targets of one build are published side by side
+        synchronized (ATTACH_LOCK) {
+            DeliveryRecordAction record = run.getAction(DeliveryRecordAction.class);
+            if (record == null) {
+                record = new DeliveryRecordAction();
+                // Attaches it to the build
+                run.addAction(record);
+            }
+            return record;
+        }
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.run = run;
+        if (store == null) {
+            // A new record, there is nothing on disk yet
+            store = new Store(fileOf(run), new CopyOnWriteArrayList<>());
+        }
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "OpsLevel delivery";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    void setStages(long envNanos, long gitNanos) {
+        this.envNanos = envNanos;
+        this.gitNanos = gitNanos;
+    }
+
+    public long getEnvNanos() {
+        return envNanos;
+    }
+
+    public long getGitNanos() {
+        return gitNanos;
+    }
+
+    public String getEnvMillis() {
+        return millis(envNanos);
+    }
+
+    public String getGitMillis() {
+        return millis(gitNanos);
+    }
+
+    Delivery add(String dedupId, String webHookUrl) {
+        Store current = getStore();
+        Delivery delivery = new Delivery(current, dedupId, webHookUrl);
+        current.deliveries.add(delivery);
+        current.save();
+        return delivery;
+    }
+
+    /**
+     * @return one entry per target, read from disk the first time they are asked for
+     */
+    public List<Delivery> getDeliveries() {
+        return getStore().deliveries;
+    }
+
+    private Store getStore() {
+        Store loaded = store;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = store;
+                if (loaded == null) {
+                    loaded = Store.load(fileOf(run));
+                    store = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Waits for the writes requested so far, e.g. before Jenkins shuts down.
+     */
+    static void flush() {
+        try {
+            WRITER.submit(() -> { }).get(10, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException | ExecutionException | TimeoutException e) {
+            log.warn("Could not finish writing OpsLevel delivery records: {}", e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static File fileOf(Run<?, ?> run) {
+        File dir = run == null ? null : run.getRootDir();
+        return dir == null ? null : new File(dir, FILE);
+    }
+
+    static String millis(long nanos) {
+        return nanos < 0 ? "n/a" : String.format("%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * The deliveries of a build and the file they are saved to.
+     */
+    static final class Store {
+        // Null while the record is not attached to a build
+        private final File file;
+        final List<Delivery> deliveries;
+        private final AtomicBoolean queued = new AtomicBoolean();
+
+        Store(File file, List<Delivery> deliveries) {
+            this.file = file;
+            this.deliveries = deliveries;
+        }
+
+        static Store load(File file) {
+            Store store = new Store(file, new CopyOnWriteArrayList<>());
+            if (file == null || !file.exists()) {
+                return store;
+            }
+            XmlFile xml = new XmlFile(file);
+            try {
+                @SuppressWarnings("unchecked")
+                List<Delivery> read = (List<Delivery>) xml.read();
+                for (Delivery delivery : read) {
+                    delivery.store = store;
+                }
+                store.deliveries.addAll(read);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not read {}: {}", xml, e.toString());
+            }
+            return store;
+        }
+
+        /**
+         * Writes the deliveries on the writer thread, once for every change made before the write starts.
+         */
+        void save() {
+            if (file == null || !queued.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                WRITER.execute(() -> {
+                    // Changes from here on need another write
+                    queued.set(false);
+                    write();
+                });
+            } catch (RejectedExecutionException e) {
+                queued.set(false);
+                write();
+            }
+        }
+
+        private synchronized void write() {
+            XmlFile xml = new XmlFile(file);
+            try {
+                xml.write(new ArrayList<>(deliveries));
+            } catch (IOException e) {
+                log.warn("Could not save {}: {}", xml, e.toString());
+            }
+        }
+    }
+
+    /**
+     * One deploy to one target. Stage timings are those of the last attempt, updated by
+     * {@link DeliveryEventListener} as OkHttp makes the call.
+     */
+    public static class Delivery {
+
+        private transient Store store;
+
+        public final String dedupId;
+        public final String webHookUrl;
+        // How the deploy was handed off, e.g. "queued", see JobListener#publish
+        private volatile String outcome;
+        private volatile int attempts;
+        // 0 until OpsLevel answered
+        private volatile int code;
+        private volatile String failure;
+        private volatile long serializeNanos = -1;
+        private volatile long connectNanos = -1;
+        private volatile long ttfbNanos = -1;
+
+        Delivery(Store store, String dedupId, String webHookUrl) {
+            this.store = store;
+            this.dedupId = dedupId;
+            this.webHookUrl = webHookUrl;
+        }
+
+        void setOutcome(String outcome) {
+            this.outcome = outcome;
+            store.save();
+        }
+
+        void onAttempt() {
+            attempts++;
+            code = 0;
+            failure = null;
+            serializeNanos = -1;
+            // Stays 0 when a pooled connection is reused
+            connectNanos = 0;
+            ttfbNanos = -1;
+        }
+
+        void onConnected(long nanos) {
+            connectNanos = nanos;
+        }
+
+        void onSerialized(long nanos) {
+            serializeNanos = nanos;
+        }
+
+        void onFirstByte(long nanos, int code) {
+            ttfbNanos = nanos;
+            this.code = code;
+        }
+
+        void onFinished(Throwable failure) {
+            if (failure != null) {
+                this.failure = failure.toString();
+            }
+            store.save();
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * @return OpsLevel's last answer, or why the last attempt failed, or how the deploy was handed off
+         */
+        public String getStatus() {
+            if (failure != null) {
+                return "failed: " + failure;
+            }
+            if (code != 0) {
+                return "HTTP " + code;
+            }
+            return outcome == null ? "pending" : outcome;
+        }
+
+        public long getSerializeNanos() {
+            return serializeNanos;
+        }
+
+        public long getConnectNanos() {
+            return connectNanos;
+        }
+
+        public long getTtfbNanos() {
+            return ttfbNanos;
+        }
+
+        public String getSerializeMillis() {
+            return millis(serializeNanos);
+        }
+
+        public String getConnectMillis() {
+            return millis(connectNanos);
+        }
+
+        public String getTtfbMillis() {
+            return millis(ttfbNanos);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.jenkins.plugins;
+
+/**
+ * What OpsLevel answered for a single delivery attempt.
+ */
+public class DeliveryResult {
+    public final int code;
+    public final String body;
+    public final String retryAfter;
+    /**
+     * How long the HTTP call took once it was off OkHttp's queue, or -1 for answers made up
+     * without calling OpsLevel, like a full queue or an open circuit breaker.
+     */
+    public final long durationNanos;
+
+    public DeliveryResult(int code, String body) {
+        this(code, body, null);
+    }
+
+    public DeliveryResult(int code, String body, String retryAfter) {
+        this(code, body, retryAfter, -1);
+    }
+
+    public DeliveryResult(int code, String body, String retryAfter, long durationNanos) {
+        this.code = code;
+        this.body = body;
+        this.retryAfter = retryAfter;
+        this.durationNanos = durationNanos;
+    }
+
+    public boolean isSuccessful() {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * True when sending the same event again could get a different answer.
+     */
+    public boolean isTransient() {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    @Override
+    public String toString() {
+        return code + " " + body;
+    }
+}
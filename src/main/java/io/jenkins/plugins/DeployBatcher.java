@@ -0,0 +1,237 @@
+package io.jenkins.plugins;
+
+import java.io.Closeable;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonStructure;
+import javax.json.JsonValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces deploy events for the same webhook URL into a single request.
+ *
+ * A batch is sent once it holds {@code maxEvents} events or its first event has waited
+ * {@code windowMillis}, whichever comes first. The request body is a JSON array of the
+ * individual deploy payloads. OpsLevel answers with a JSON array of acknowledgements,
+ * matched to events by {@code dedup_id} (or by position when it is missing):
+ *
+ * <pre>
+ * [{"dedup_id": "9ae5...", "result": "ok"}, {"dedup_id": "1a9f...", "status": 422, "error": "..."}]
+ * </pre>
+ *
+ * An acknowledgement with an {@code error} and no {@code status} counts as a 422. If the
+ * response is not an array, or the whole request failed, every event gets the batch's result.
+ * An event whose acknowledgement is transient (a 429 or 5xx, or none at all) is handed to the
+ * {@link RetryingSender}, if there is one, and sent again on its own.
+ */
+public class DeployBatcher implements DeploySender, Closeable {
+
+    private static final int MISSING_ACK_STATUS = 502;
+
+    private static final Logger log = LoggerFactory.getLogger(DeployBatcher.class);
+
+    private final DeploySender downstream;
+    // Null when per-event results are reported as they are
+    private final RetryingSender retrier;
+    private final IntSupplier maxEvents;
+    private final LongSupplier windowMillis;
+    private final ScheduledExecutorService timer;
+    // Guarded by this
+    private final Map<String, Batch> open = new HashMap<>();
+
+    public DeployBatcher(DeploySender downstream, IntSupplier maxEvents, LongSupplier windowMillis) {
+        this(downstream, null, maxEvents, windowMillis);
+    }
+
+    /**
+     * @param retrier sends the events OpsLevel could not take yet again, one by one
+     */
+    public DeployBatcher(DeploySender downstream, RetryingSender retrier, IntSupplier maxEvents, LongSupplier windowMillis) {
+        this.downstream = downstream;
+        this.retrier = retrier;
+        this.maxEvents = maxEvents;
+        this.windowMillis = windowMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "OpsLevel batch flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public CompletableFuture<DeliveryResult> send(DeployEvent event) {
+        Pending pending = new Pending(event);
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = open.get(event.webHookUrl);
+            if (batch == null) {
+                batch = new Batch(event.webHookUrl);
+                open.put(event.webHookUrl, batch);
+                final Batch scheduled = batch;
+                batch.flush = timer.schedule(() -> flush(scheduled), windowMillis.getAsLong(), TimeUnit.MILLISECONDS);
+            }
+            batch.events.add(pending);
+            if (batch.events.size() >= maxEvents.getAsInt()) {
+                open.remove(event.webHookUrl);
+                batch.flush.cancel(false);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return pending.result;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        List<Batch> remaining;
+        synchronized (this) {
+            remaining = new ArrayList<>(open.values());
+            open.clear();
+        }
+        for (Batch batch : remaining) {
+            dispatch(batch);
+        }
+    }
+
+    private void flush(Batch batch) {
+        synchronized (this) {
+            // The batch may already have been sent because it filled up
+            if (open.get(batch.webHookUrl) != batch) {
+                return;
+            }
+            open.remove(batch.webHookUrl);
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch batch) {
+        // Each payload streams itself into the array as the request is written
+        JsonPayload body = sink -> {
+            sink.writeByte('[');
+            for (int i = 0; i < batch.events.size(); i++) {
+                if (i > 0) {
+                    sink.writeByte(',');
+                }
+                batch.events.get(i).event.payload.writeTo(sink);
+            }
+            sink.writeByte(']');
+        };
+
+        DeployEvent batchEvent = new DeployEvent(batch.webHookUrl, null, body,
+            "batch of " + batch.events.size() + " deploys", 0);
+        CompletableFuture<DeliveryResult> result = downstream.send(batchEvent);
+        if (result == null) {
+            log.warn("OpsLevel delivery queue is full, could not send {}", batchEvent);
+            DeliveryResult rejected = new DeliveryResult(503, "OpsLevel delivery queue is full");
+            for (Pending pending : batch.events) {
+                pending.result.complete(rejected);
+            }
+            return;
+        }
+        result.whenComplete((delivered, failure) -> {
+            if (failure != null) {
+                for (Pending pending : batch.events) {
+                    pending.result.completeExceptionally(failure);
+                }
+            } else {
+                acknowledge(batch, delivered);
+            }
+        });
+    }
+
+    private void acknowledge(Batch batch, DeliveryResult delivered) {
+        JsonArray acks = delivered.isSuccessful() ? parseAcks(delivered.body) : null;
+        if (acks == null) {
+            for (Pending pending : batch.events) {
+                pending.result.complete(delivered);
+            }
+            return;
+        }
+
+        Map<String, JsonObject> byDedupId = new HashMap<>();
+        for (JsonValue ack : acks) {
+            if (ack instanceof JsonObject && ((JsonObject) ack).containsKey("dedup_id")) {
+                byDedupId.put(((JsonObject) ack).getString("dedup_id", ""), (JsonObject) ack);
+            }
+        }
+
+        for (int i = 0; i < batch.events.size(); i++) {
+            Pending pending = batch.events.get(i);
+            JsonObject ack = byDedupId.get(pending.event.dedupId);
+            if (ack == null && i < acks.size() && acks.get(i) instanceof JsonObject) {
+                ack = acks.getJsonObject(i);
+            }
+            DeliveryResult result = resultFor(ack, delivered.code);
+            if (retrier != null && result.isTransient()) {
+                // The rest of the batch was settled, only this event goes again
+                retrier.retry(pending.event, 1, result, null).whenComplete((retried, failure) -> {
+                    if (failure != null) {
+                        pending.result.completeExceptionally(failure);
+                    } else {
+                        pending.result.complete(retried);
+                    }
+                });
+            } else {
+                pending.result.complete(result);
+            }
+        }
+    }
+
+    private static DeliveryResult resultFor(JsonObject ack, int batchStatus) {
+        if (ack == null) {
+            return new DeliveryResult(MISSING_ACK_STATUS, "No acknowledgement for this deploy in the batch response");
+        }
+        int status = batchStatus;
+        if (ack.containsKey("status")) {
+            status = ack.getInt("status", batchStatus);
+        } else if (ack.containsKey("error")) {
+            status = 422;
+        }
+        return new DeliveryResult(status, ack.toString());
+    }
+
+    private static JsonArray parseAcks(String body) {
+        try (JsonReader reader = Json.createReader(new StringReader(body))) {
+            JsonStructure structure = reader.read();
+            return structure instanceof JsonArray ? (JsonArray) structure : null;
+        } catch (JsonException e) {
+            return null;
+        }
+    }
+
+    private static class Pending {
+        final DeployEvent event;
+        final CompletableFuture<DeliveryResult> result = new CompletableFuture<>();
+
+        Pending(DeployEvent event) {
+            this.event = event;
+        }
+    }
+
+    private static class Batch {
+        final String webHookUrl;
+        final List<Pending> events = new ArrayList<>();
+        ScheduledFuture<?> flush;
+
+        Batch(String webHookUrl) {
+            this.webHookUrl = webHookUrl;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package io.jenkins.plugins;
+
+import okhttp3.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends deploy events to OpsLevel, either on the calling thread or in the background.
+ *
+ * Background delivery goes through OkHttp's own dispatcher via {@link Call#enqueue}. The number of
+ * events waiting or in flight is bounded so a slow OpsLevel cannot grow the controller heap without limit.
+ */
+public class DeployDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(DeployDispatcher.class);
+
+    private static final String AGENT = "jenkins-" + loadPluginVersion();
+
+    private final Supplier<OkHttpClient> client;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public DeployDispatcher(OkHttpClient client) {
+        this(() -> client);
+    }
+
+    /**
+     * @param client looked up for every request, so a reconfigured client is picked up right away
+     */
+    public DeployDispatcher(Supplier<OkHttpClient> client) {
+        this.client = client;
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Delivers the event on the calling thread and prints the response to the build console.
+     */
+    public DeliveryResult send(DeployEvent event, PrintStream buildConsole) throws IOException {
+        Request request = newRequest(event.webHookUrl, event.payload, event);
+        long start = System.nanoTime();
+        try (Response response = client.get().newCall(request).execute()) {
+            DeliveryResult delivered = toResult(response);
+            record(start, delivered);
+            if (delivered.isSuccessful()) {
+                log.info("Invocation of webhook {} successful", request.url());
+            } else {
+                log.warn("Invocation of webhook {} returned {}", request.url(), delivered.code);
+            }
+            String message = "Response: " + delivered.body + "\n";
+            buildConsole.print(message);
+            log.info(message);
+            return delivered;
+        } catch (IOException e) {
+            record(start, null);
+            log.info("Invocation of webhook {} failed: {}", request.url(), e.toString());
+            throw e;
+        }
+    }
+
+    /**
+     * Hands the event to the background dispatcher and returns immediately.
+     *
+     * @return the eventual outcome of the delivery, or null if {@code capacity} events are already pending,
+     *         in which case nothing was queued
+     */
+    public CompletableFuture<DeliveryResult> submit(DeployEvent event, int capacity) {
+        return submit(event.webHookUrl, event.payload, event, event, capacity);
+    }
+
+    /**
+     * Sends an arbitrary JSON document to a webhook URL in the background.
+     *
+     * @param label identifies what is being sent in log messages
+     */
+    public CompletableFuture<DeliveryResult> submit(String webHookUrl, JsonPayload payload, Object label, int capacity) {
+        return submit(webHookUrl, payload, null, label, capacity);
+    }
+
+    private CompletableFuture<DeliveryResult> submit(String webHookUrl, JsonPayload payload, DeployEvent event,
+                                                     Object label, int capacity) {
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            log.warn("OpsLevel delivery queue is full ({} pending), not queueing deploy for {}", capacity, label);
+            return null;
+        }
+
+        final Request request;
+        try {
+            request = newRequest(webHookUrl, payload, event);
+        } catch (RuntimeException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+
+        CompletableFuture<DeliveryResult> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        client.get().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                pending.decrementAndGet();
+                record(start, null);
+                log.warn("Invocation of webhook {} for {} failed: {}", request.url(), label, e.toString());
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    DeliveryResult delivered = toResult(r);
+                    record(start, delivered);
+                    log.info("Invocation of webhook {} for {} returned {}", request.url(), label, delivered);
+                    result.complete(delivered);
+                } catch (IOException e) {
+                    // Counted as a failed attempt, like onFailure
+                    record(start, null);
+                    log.warn("Could not read OpsLevel response for {}: {}", label, e.toString());
+                    result.completeExceptionally(e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        });
+        return result;
+    }
+
+    // Includes time queued in OkHttp's dispatcher for background deliveries
+    private static void record(long start, DeliveryResult delivered) {
+        DeliveryMetrics metrics = DeliveryMetrics.get();
+        metrics.getRoundTrip().record(System.nanoTime() - start);
+        if (delivered != null && delivered.isSuccessful()) {
+            metrics.onSent();
+        } else {
+            metrics.onFailed();
+        }
+    }
+
+    private static DeliveryResult toResult(Response response) throws IOException {
+        ResponseBody responseBody = response.body();
+        String body = responseBody == null ? "" : responseBody.string();
+        DeliveryEventListener.Timing timing = response.request().tag(DeliveryEventListener.Timing.class);
+        return new DeliveryResult(response.code(), body, response.header("Retry-After"),
+            timing == null ? -1 : timing.durationNanos());
+    }
+
+    /**
+     * @param event tagged on the request for {@link DeliveryEventListener}, may be null
+     */
+    private Request newRequest(String webHookUrl, JsonPayload payload, DeployEvent event) {
+        // Build the URL with query params
+        HttpUrl url = HttpUrl.parse(webHookUrl).newBuilder()
+            .addQueryParameter("agent", AGENT)
+            .build();
+
+        if (log.isDebugEnabled()) {
+            // Only materialized for the log, the request body is streamed
+            log.debug("Sending OpsLevel Integration payload:\n{}", payload.toJson());
+        }
+
+        return new Request.Builder()
+            .url(url)
+            .post(new JsonPayloadBody(payload))
+            .tag(DeployEvent.class, event)
+            .tag(DeliveryEventListener.Timing.class, new DeliveryEventListener.Timing())
+            .build();
+    }
+
+    private static String loadPluginVersion() {
+        // Get the plugin version to pass through as a request parameter
+        final Properties properties = new Properties();
+        // Have to catch the potential IO Exception
+        try {
+            // TODO: In development this seems to pull from src/main/config.properties, instead of target/classes/properties
+            //       Once the plugin is compiled it will get the correct version string, but we could not figure out how
+            //       to get it looking at the right place in development
+            properties.load(DeployDispatcher.class.getClassLoader().getResourceAsStream("config.properties"));
+            return properties.getProperty("plugin.version");
+        }
+        catch (Exception e) {
+            log.error("Project properties does not exist. {}", e.toString());
+            return "";
+        }
+    }
+}
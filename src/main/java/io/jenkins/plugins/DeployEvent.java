@@ -0,0 +1,37 @@
+package io.jenkins.plugins;
+
+/**
+ * Immutable snapshot of a deploy, taken on the build thread so it can be delivered
+ * after the build itself has moved on.
+ */
+public class DeployEvent {
+    public final String webHookUrl;
+    public final String dedupId;
+    public final JsonPayload payload;
+    public final String jobName;
+    public final int buildNumber;
+    // Where the build keeps track of this deploy, null when nothing does
+    public final DeliveryRecordAction.Delivery delivery;
+    // System.nanoTime() when the snapshot was taken, the retry deadline counts from here across every hand-off
+    public final long createdNanos;
+
+    public DeployEvent(String webHookUrl, String dedupId, JsonPayload payload, String jobName, int buildNumber) {
+        this(webHookUrl, dedupId, payload, jobName, buildNumber, null);
+    }
+
+    public DeployEvent(String webHookUrl, String dedupId, JsonPayload payload, String jobName, int buildNumber,
+                       DeliveryRecordAction.Delivery delivery) {
+        this.webHookUrl = webHookUrl;
+        this.dedupId = dedupId;
+        this.payload = payload;
+        this.jobName = jobName;
+        this.buildNumber = buildNumber;
+        this.delivery = delivery;
+        this.createdNanos = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return jobName + " #" + buildNumber;
+    }
+}
@@ -0,0 +1,507 @@
+package io.jenkins.plugins;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import okio.Buffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only, segmented journal of deploy events waiting to be delivered to OpsLevel.
+ *
+ * Each segment is a {@code <first sequence>.log} file of framed records
+ * ({@code length, sequence, crc32, event}) and a companion {@code .ack} file listing the
+ * sequences OpsLevel has accepted. Writers share fsyncs: whoever finds no sync in progress
+ * forces the channel on behalf of everything written so far, the others wait for it.
+ * A single drainer thread delivers new records as they arrive, rescans for failed ones
+ * periodically, and deletes segments once every record in them is acknowledged.
+ */
+public class DeployOutbox implements Closeable {
+
+    private static final long SEGMENT_SIZE = 4L * 1024 * 1024;
+    private static final long RESCAN_INTERVAL_SECONDS = 30;
+    private static final int HEADER_SIZE = 4 + 8 + 4;
+    private static final String LOG_SUFFIX = ".log";
+    private static final String ACK_SUFFIX = ".ack";
+
+    private static final Logger log = LoggerFactory.getLogger(DeployOutbox.class);
+
+    private final File dir;
+    private final DeploySender sender;
+    private final ScheduledExecutorService drainer;
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    // Guarded by lock
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private long nextSeq;
+    private long writtenSeq;
+    private long durableSeq;
+    private boolean syncing;
+
+    public DeployOutbox(File dir, DeploySender sender) throws IOException {
+        this.dir = dir;
+        this.sender = sender;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create OpsLevel outbox directory " + dir);
+        }
+        recover();
+        this.drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "OpsLevel outbox drainer");
+            t.setDaemon(true);
+            return t;
+        });
+        drainer.scheduleWithFixedDelay(() -> drain(true), 0, RESCAN_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Journals the event and returns once it is on disk.
+     */
+    public long append(DeployEvent event) throws IOException, InterruptedException {
+        byte[] body = encode(event);
+        long seq;
+        lock.lock();
+        try {
+            if (active.size >= SEGMENT_SIZE) {
+                while (syncing) {
+                    synced.await();
+                }
+                roll();
+            }
+            seq = nextSeq++;
+            ByteBuffer record = frame(seq, body);
+            while (record.hasRemaining()) {
+                active.channel.write(record);
+            }
+            active.size += HEADER_SIZE + body.length;
+            active.records++;
+            writtenSeq = seq;
+        } finally {
+            lock.unlock();
+        }
+
+        awaitDurable(seq);
+        requestDrain();
+        return seq;
+    }
+
+    public int getUnacknowledged() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (Segment segment : segments.values()) {
+                count += segment.records - segment.acked.size();
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        drainer.shutdownNow();
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitDurable(long seq) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                if (syncing) {
+                    synced.await();
+                    continue;
+                }
+                // Become the leader: one fsync covers every record written up to now
+                syncing = true;
+                long target = writtenSeq;
+                FileChannel channel = active.channel;
+                lock.unlock();
+                try {
+                    channel.force(false);
+                } finally {
+                    lock.lock();
+                    syncing = false;
+                    synced.signalAll();
+                }
+                durableSeq = Math.max(durableSeq, target);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock and no sync is in progress
+    private void roll() throws IOException {
+        active.channel.force(false);
+        durableSeq = writtenSeq;
+        active.channel.close();
+        active.channel = null;
+        active = openSegment(nextSeq);
+    }
+
+    private Segment openSegment(long baseSeq) throws IOException {
+        Segment segment = new Segment(dir, baseSeq);
+        segment.channel = FileChannel.open(segment.logFile.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segments.put(baseSeq, segment);
+        return segment;
+    }
+
+    private void recover() throws IOException {
+        File[] logs = dir.listFiles((d, name) -> name.endsWith(LOG_SUFFIX));
+        long maxSeq = -1;
+        if (logs != null) {
+            for (File logFile : logs) {
+                String name = logFile.getName();
+                Segment segment = new Segment(dir, Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length())));
+                try (RecordReader reader = new RecordReader(segment.logFile)) {
+                    Record record;
+                    while ((record = reader.next()) != null) {
+                        segment.records++;
+                        maxSeq = Math.max(maxSeq, record.seq);
+                    }
+                    segment.size = reader.position;
+                }
+                segment.loadAcks();
+                if (segment.isFullyAcked()) {
+                    segment.delete();
+                } else {
+                    segments.put(segment.baseSeq, segment);
+                }
+            }
+        }
+        nextSeq = maxSeq + 1;
+        writtenSeq = maxSeq;
+        durableSeq = maxSeq;
+        // Never append after a possibly torn tail: start a fresh segment on every boot
+        active = openSegment(nextSeq);
+        int undelivered = getUnacknowledged();
+        if (undelivered > 0) {
+            log.info("OpsLevel outbox recovered {} undelivered deploy(s) from {}", undelivered, dir);
+        }
+    }
+
+    private void requestDrain() {
+        if (drainRequested.compareAndSet(false, true)) {
+            drainer.execute(() -> {
+                drainRequested.set(false);
+                drain(false);
+            });
+        }
+    }
+
+    /**
+     * @param rescan read every segment from the start so records whose delivery failed are picked up
+     *               again, rather than only the records appended since the last pass
+     */
+    void drain(boolean rescan) {
+        try {
+            List<Segment> snapshot;
+            lock.lock();
+            try {
+                snapshot = new ArrayList<>(segments.values());
+            } finally {
+                lock.unlock();
+            }
+
+            for (Segment segment : snapshot) {
+                if (!drainSegment(segment, rescan)) {
+                    break;
+                }
+            }
+            compact();
+        } catch (Exception e) {
+            log.warn("OpsLevel outbox drain failed: {}", e.toString());
+        }
+    }
+
+    /**
+     * @return false when the sender is full and the pass should stop
+     */
+    private boolean drainSegment(Segment segment, boolean rescan) throws IOException {
+        long start = rescan ? 0 : segment.drainedTo;
+        try (RecordReader reader = new RecordReader(segment.logFile)) {
+            reader.skip(start);
+            Record record;
+            while ((record = reader.next()) != null) {
+                long seq = record.seq;
+                // Claimed before sending, the result may already be complete when send returns
+                if (!segment.isAcked(seq) && inFlight.add(seq)) {
+                    CompletableFuture<DeliveryResult> result;
+                    DeployEvent event;
+                    try {
+                        event = decode(record.body);
+                        result = sender.send(event);
+                    } catch (IOException | RuntimeException e) {
+                        inFlight.remove(seq);
+                        throw e;
+                    }
+                    if (result == null) {
+                        inFlight.remove(seq);
+                        return false;
+                    }
+                    result.whenComplete((delivered, failure) -> {
+                        if (failure == null && !delivered.isTransient()) {
+                            if (!delivered.isSuccessful()) {
+                                log.warn("OpsLevel rejected deploy {}, dropping it from the outbox: {}", event, delivered);
+                            }
+                            acknowledge(segment, seq);
+                        }
+                        inFlight.remove(seq);
+                    });
+                }
+                segment.drainedTo = Math.max(segment.drainedTo, reader.position);
+            }
+        }
+        return true;
+    }
+
+    private void acknowledge(Segment segment, long seq) {
+        try {
+            segment.ack(seq);
+        } catch (IOException e) {
+            // The deploy will be sent again after a restart, OpsLevel dedupes it on dedup_id
+            log.warn("Could not record acknowledgement of OpsLevel deploy {}: {}", seq, e.toString());
+        }
+    }
+
+    private void compact() {
+        lock.lock();
+        try {
+            Iterator<Segment> it = segments.values().iterator();
+            while (it.hasNext()) {
+                Segment segment = it.next();
+                if (segment != active && segment.isFullyAcked()) {
+                    try {
+                        segment.delete();
+                    } catch (IOException e) {
+                        log.warn("Could not close OpsLevel outbox segment {}: {}", segment.logFile, e.toString());
+                    }
+                    it.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ByteBuffer frame(long seq, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        record.putInt(body.length).putLong(seq).putInt((int) crc.getValue()).put(body);
+        record.flip();
+        return record;
+    }
+
+    private static byte[] encode(DeployEvent event) throws IOException {
+        Buffer payload = new Buffer();
+        event.payload.writeTo(payload);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + (int) payload.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, event.webHookUrl);
+            writeString(out, event.dedupId);
+            writeString(out, event.jobName);
+            out.writeInt(event.buildNumber);
+            // Same length-prefixed UTF-8 layout as the strings
+            out.writeInt((int) payload.size());
+            payload.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DeployEvent decode(byte[] body) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            String webHookUrl = readString(in);
+            String dedupId = readString(in);
+            String jobName = readString(in);
+            int buildNumber = in.readInt();
+            JsonPayload payload = JsonPayload.of(readBytes(in));
+            return new DeployEvent(webHookUrl, dedupId, payload, jobName, buildNumber);
+        }
+    }
+
+    // DataOutputStream.writeUTF is limited to 64k, payloads are not
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static class Record {
+        final long seq;
+        final byte[] body;
+
+        Record(long seq, byte[] body) {
+            this.seq = seq;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Reads framed records until the end of the file or the first torn or corrupt record.
+     */
+    private static class RecordReader implements Closeable {
+        private final DataInputStream in;
+        private final long length;
+        long position;
+
+        RecordReader(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            this.length = file.length();
+        }
+
+        void skip(long bytes) throws IOException {
+            long skipped = 0;
+            while (skipped < bytes) {
+                long n = in.skip(bytes - skipped);
+                if (n <= 0) {
+                    break;
+                }
+                skipped += n;
+            }
+            position = skipped;
+        }
+
+        Record next() throws IOException {
+            if (length - position < HEADER_SIZE) {
+                return null;
+            }
+            int size = in.readInt();
+            long seq = in.readLong();
+            int checksum = in.readInt();
+            if (size < 0 || length - position - HEADER_SIZE < size) {
+                return null;
+            }
+            byte[] body = new byte[size];
+            in.readFully(body);
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, size);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            position += HEADER_SIZE + size;
+            return new Record(seq, body);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class Segment {
+        final long baseSeq;
+        final File logFile;
+        final File ackFile;
+        final Set<Long> acked = ConcurrentHashMap.newKeySet();
+        // Guarded by the outbox lock
+        FileChannel channel;
+        long size;
+        int records;
+        // Only touched by the drainer thread
+        long drainedTo;
+        private FileChannel ackChannel;
+
+        Segment(File dir, long baseSeq) {
+            this.baseSeq = baseSeq;
+            String name = String.format("%020d", baseSeq);
+            this.logFile = new File(dir, name + LOG_SUFFIX);
+            this.ackFile = new File(dir, name + ACK_SUFFIX);
+        }
+
+        boolean isAcked(long seq) {
+            return acked.contains(seq);
+        }
+
+        boolean isFullyAcked() {
+            return acked.size() >= records;
+        }
+
+        void loadAcks() throws IOException {
+            if (!ackFile.exists()) {
+                return;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(ackFile)))) {
+                long remaining = ackFile.length() / 8;
+                for (long i = 0; i < remaining; i++) {
+                    acked.add(in.readLong());
+                }
+            }
+        }
+
+        // Acks are not fsynced: losing one only means a duplicate delivery, which dedup_id absorbs
+        synchronized void ack(long seq) throws IOException {
+            if (!acked.add(seq)) {
+                return;
+            }
+            if (ackChannel == null) {
+                ackChannel = FileChannel.open(ackFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(8).putLong(seq);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                ackChannel.write(buffer);
+            }
+        }
+
+        synchronized void close() throws IOException {
+            if (ackChannel != null) {
+                ackChannel.close();
+                ackChannel = null;
+            }
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        }
+
+        void delete() throws IOException {
+            close();
+            if (!logFile.delete() && logFile.exists()) {
+                log.warn("Could not delete OpsLevel outbox segment {}", logFile);
+            }
+            if (!ackFile.delete() && ackFile.exists()) {
+                log.warn("Could not delete OpsLevel outbox acknowledgements {}", ackFile);
+            }
+        }
+    }
+}
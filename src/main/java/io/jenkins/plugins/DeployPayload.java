@@ -0,0 +1,204 @@
+package io.jenkins.plugins;
+
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+/**
+ * The deploy sent to OpsLevel, serialized with a streaming {@link JsonGenerator} straight into the sink.
+ *
+ * Fields that are null are left out of the document.
+ */
+public class DeployPayload implements JsonPayload {
+
+    private static final JsonGeneratorFactory GENERATORS = Json.createGeneratorFactory(null);
+
+    public final String dedupId;
+    public final String deployNumber;
+    public final String deployUrl;
+    public final String deployedAt;
+    public final String description;
+    public final String environment;
+    public final String service;
+    public final Deployer deployer;
+    public final Commit commit;
+    // Every commit in the deploy, null when not collected
+    public final ShippedCommits shipped;
+
+    public DeployPayload(String dedupId, String deployNumber, String deployUrl, String deployedAt, String description,
+                         String environment, String service, Deployer deployer, Commit commit) {
+        this(dedupId, deployNumber, deployUrl, deployedAt, description, environment, service, deployer, commit, null);
+    }
+
+    public DeployPayload(String dedupId, String deployNumber, String deployUrl, String deployedAt, String description,
+                         String environment, String service, Deployer deployer, Commit commit,
+                         ShippedCommits shipped) {
+        this.dedupId = dedupId;
+        this.deployNumber = deployNumber;
+        this.deployUrl = deployUrl;
+        this.deployedAt = deployedAt;
+        this.description = description;
+        this.environment = environment;
+        this.service = service;
+        this.deployer = deployer;
+        this.commit = commit;
+        this.shipped = shipped;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        // Closing the generator hands its buffer back to the pool, the sink itself stays open
+        try (JsonGenerator json = GENERATORS.createGenerator(new SinkWriter(sink))) {
+            json.writeStartObject();
+            write(json, "dedup_id", dedupId);
+            write(json, "deploy_number", deployNumber);
+            write(json, "deploy_url", deployUrl);
+            write(json, "deployed_at", deployedAt);
+            write(json, "description", description);
+            write(json, "environment", environment);
+            write(json, "service", service);
+            if (deployer != null) {
+                deployer.writeTo(json);
+            }
+            if (commit != null) {
+                commit.writeTo(json);
+            }
+            if (shipped != null) {
+                shipped.writeTo(json);
+            }
+            json.writeEnd();
+        }
+    }
+
+    static void write(JsonGenerator json, String name, String value) {
+        if (value != null) {
+            json.write(name, value);
+        }
+    }
+
+    public static class Deployer {
+        public final String id;
+        public final String name;
+        public final String email;
+
+        public Deployer(String id, String name, String email) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+        }
+
+        void writeTo(JsonGenerator json) {
+            json.writeStartObject("deployer");
+            write(json, "id", id);
+            write(json, "name", name);
+            write(json, "email", email);
+            json.writeEnd();
+        }
+    }
+
+    public static class Commit {
+        public final String sha;
+        public final String branch;
+        public final String message;
+        // Details from git, null when the commit could not be read
+        public final CommitRecord record;
+
+        public Commit(String sha, String branch, String message) {
+            this(sha, branch, message, null);
+        }
+
+        public Commit(String sha, String branch, String message, CommitRecord record) {
+            this.sha = sha;
+            this.branch = branch;
+            this.message = message;
+            this.record = record;
+        }
+
+        void writeTo(JsonGenerator json) {
+            json.writeStartObject("commit");
+            write(json, "sha", sha);
+            write(json, "branch", branch);
+            write(json, "message", message);
+            if (record != null) {
+                write(json, "date", isoInstant(record.commitTime));
+                write(json, "committer_name", record.committerName);
+                write(json, "committer_email", record.committerEmail);
+                write(json, "author_name", record.authorName);
+                write(json, "author_email", record.authorEmail);
+                write(json, "authoring_date", isoInstant(record.authorTime));
+            }
+            json.writeEnd();
+        }
+
+        // Same format as deployed_at
+        private static String isoInstant(long epochSeconds) {
+            return DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochSecond(epochSeconds));
+        }
+    }
+
+    /**
+     * Encodes the generator's characters as UTF-8 directly into the sink's segments. An
+     * {@link java.io.OutputStreamWriter} would add its own 8k buffer for every payload.
+     */
+    private static final class SinkWriter extends Writer {
+        private final BufferedSink sink;
+        // A surrogate pair can be split across two of the generator's flushes
+        private char pendingHighSurrogate;
+
+        SinkWriter(BufferedSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write(str.charAt(i));
+            }
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            char ch = (char) c;
+            if (pendingHighSurrogate != 0) {
+                char high = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+                if (Character.isLowSurrogate(ch)) {
+                    sink.writeUtf8CodePoint(Character.toCodePoint(high, ch));
+                    return;
+                }
+                sink.writeUtf8CodePoint(high);
+            }
+            if (Character.isHighSurrogate(ch)) {
+                pendingHighSurrogate = ch;
+            } else {
+                sink.writeUtf8CodePoint(ch);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // OkHttp flushes the sink once the whole body is written
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (pendingHighSurrogate != 0) {
+                sink.writeUtf8CodePoint(pendingHighSurrogate);
+                pendingHighSurrogate = 0;
+            }
+        }
+    }
+}
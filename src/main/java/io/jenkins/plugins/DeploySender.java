@@ -0,0 +1,14 @@
+package io.jenkins.plugins;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A stage that eventually delivers a deploy event to OpsLevel.
+ */
+@FunctionalInterface
+public interface DeploySender {
+    /**
+     * @return the eventual outcome of the delivery, or null if the stage is at capacity and did not take the event
+     */
+    CompletableFuture<DeliveryResult> send(DeployEvent event);
+}
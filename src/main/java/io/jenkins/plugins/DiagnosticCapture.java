@@ -0,0 +1,115 @@
+package io.jenkins.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Writes what a deploy was built from to a small rotating log, for the builds chosen for diagnostics.
+ *
+ * Snapshots are bounded (number of variables and length of each value) and anything that looks
+ * like a credential is redacted, so a capture is safe to attach to a support request.
+ */
+public class DiagnosticCapture {
+
+    static final String FILE_NAME = "diagnostics.log";
+    static final int MAX_VARIABLES = 200;
+    static final int MAX_VALUE_LENGTH = 256;
+    static final String REDACTED = "****";
+
+    private static final Pattern SENSITIVE_NAME =
+        Pattern.compile(".*(PASSWORD|PASSWD|SECRET|TOKEN|CREDENTIAL|PRIVATE|API_?KEY|AUTH).*", Pattern.CASE_INSENSITIVE);
+    // user:password@ in URLs such as GIT_URL
+    private static final Pattern URL_USER_INFO = Pattern.compile("(?<=://)[^/@\\s]+@");
+
+    private final File dir;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    /**
+     * @param maxFileBytes size at which the log is rotated
+     * @param maxFiles     number of files kept, the current one included
+     */
+    public DiagnosticCapture(File dir, long maxFileBytes, int maxFiles) {
+        this.dir = dir;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    /**
+     * @param sensitive names to redact regardless of what they are called, e.g. password parameters
+     */
+    public synchronized void capture(String build, long envResolutionNanos, Map<String, String> env,
+                                     Set<String> sensitive) throws IOException {
+        byte[] snapshot = format(build, envResolutionNanos, env,
+            sensitive == null ? Collections.<String>emptySet() : sensitive).getBytes(StandardCharsets.UTF_8);
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        File current = file(0);
+        if (current.length() > 0 && current.length() + snapshot.length > maxFileBytes) {
+            rotate();
+        }
+        try (OutputStream out = new FileOutputStream(current, true)) {
+            out.write(snapshot);
+        }
+    }
+
+    static String format(String build, long envResolutionNanos, Map<String, String> env, Set<String> sensitive) {
+        StringBuilder snapshot = new StringBuilder();
+        snapshot.append(Instant.now()).append(' ').append(build).append('\n');
+        snapshot.append("  environment resolved in ")
+            .append(TimeUnit.NANOSECONDS.toMicros(envResolutionNanos) / 1000.0).append(" ms, ")
+            .append(env.size()).append(" variables\n");
+
+        int written = 0;
+        for (Map.Entry<String, String> variable : new TreeMap<>(env).entrySet()) {
+            if (written++ == MAX_VARIABLES) {
+                snapshot.append("  ... ").append(env.size() - MAX_VARIABLES).append(" more\n");
+                break;
+            }
+            String name = variable.getKey();
+            snapshot.append("  ").append(name).append('=').append(redact(name, variable.getValue(), sensitive)).append('\n');
+        }
+        return snapshot.append('\n').toString();
+    }
+
+    static String redact(String name, String value, Set<String> sensitive) {
+        if (sensitive.contains(name) || SENSITIVE_NAME.matcher(name).matches()) {
+            return REDACTED;
+        }
+        if (value == null) {
+            return "";
+        }
+        // Keep a snapshot on one line per variable
+        String flat = URL_USER_INFO.matcher(value.replace('\n', ' ').replace('\r', ' ')).replaceAll(REDACTED + "@");
+        return flat.length() <= MAX_VALUE_LENGTH ? flat : flat.substring(0, MAX_VALUE_LENGTH) + "...";
+    }
+
+    private void rotate() throws IOException {
+        File oldest = file(maxFiles - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Could not delete " + oldest);
+        }
+        for (int i = maxFiles - 2; i >= 0; i--) {
+            File from = file(i);
+            if (from.exists() && !from.renameTo(file(i + 1))) {
+                throw new IOException("Could not rotate " + from);
+            }
+        }
+    }
+
+    private File file(int generation) {
+        return new File(dir, generation == 0 ? FILE_NAME : FILE_NAME + "." + generation);
+    }
+}
@@ -0,0 +1,92 @@
+package io.jenkins.plugins;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request statistics for one OpsLevel host, in the shape Prometheus expects: latency counts per
+ * fixed bucket, a count per HTTP status code, network failures and request body bytes.
+ *
+ * Every counter is allocated with the host, recording only increments them.
+ */
+public class EndpointStats {
+
+    // The Prometheus client's default buckets, in seconds
+    static final double[] BUCKET_SECONDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+    static {
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKET_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+    static final int MAX_STATUS = 599;
+
+    public final String host;
+    // One more than the bounds for +Inf, not cumulative
+    private final LongAdder[] buckets = newAdders(BUCKET_SECONDS.length + 1);
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder[] statuses = newAdders(MAX_STATUS + 1);
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    EndpointStats(String host) {
+        this.host = host;
+    }
+
+    private static LongAdder[] newAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public void recordLatency(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        latencyNanos.add(Math.max(0, nanos));
+        requests.increment();
+    }
+
+    public void recordStatus(int code) {
+        if (code >= 0 && code <= MAX_STATUS) {
+            statuses[code].increment();
+        }
+    }
+
+    public void recordFailure() {
+        failures.increment();
+    }
+
+    public void recordBytesSent(long bytes) {
+        bytesSent.add(bytes);
+    }
+
+    long getBucket(int bucket) {
+        return buckets[bucket].sum();
+    }
+
+    long getLatencyNanos() {
+        return latencyNanos.sum();
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getStatus(int code) {
+        return statuses[code].sum();
+    }
+
+    long getFailures() {
+        return failures.sum();
+    }
+
+    long getBytesSent() {
+        return bytesSent.sum();
+    }
+}
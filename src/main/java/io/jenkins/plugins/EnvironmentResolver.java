@@ -0,0 +1,117 @@
+package io.jenkins.plugins;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.EnvironmentContributingAction;
+import hudson.model.TaskListener;
+import hudson.scm.NullSCM;
+import hudson.scm.SCM;
+import hudson.slaves.EnvironmentVariablesNodeProperty;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the variables a deploy needs without computing the build's full environment.
+ *
+ * {@link hudson.model.Run#getEnvironment(TaskListener)} runs every EnvironmentContributor and may
+ * call out to the agent. The variables the plugin reads mostly come from sources that are
+ * already in memory, so those are layered here in the order getEnvironment applies them:
+ * global node properties, the build's own variables, the SCM, build parameters and
+ * EnvironmentContributingActions. Only when a required variable is still missing is the full
+ * environment computed. For a project with an SCM, {@code GIT_COMMIT} and {@code GIT_BRANCH}
+ * always count as required: they may come from an EnvironmentContributor rather than the SCM
+ * itself, e.g. for an SCM wrapping git.
+ */
+public class EnvironmentResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(EnvironmentResolver.class);
+
+    // What the payload reads when the build checked something out
+    private static final String[] SCM_VARIABLES = {"GIT_COMMIT", "GIT_BRANCH"};
+
+    /**
+     * @param required variables that must resolve, typically the ones referenced by the publisher's templates
+     */
+    public static EnvVars resolve(AbstractBuild<?, ?> build, TaskListener listener, Set<String> required)
+        throws IOException, InterruptedException {
+        EnvVars env = new EnvVars();
+
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            for (EnvironmentVariablesNodeProperty property
+                : jenkins.getGlobalNodeProperties().getAll(EnvironmentVariablesNodeProperty.class)) {
+                env.putAll(property.getEnvVars());
+            }
+        }
+
+        putBuildVariables(build, env, jenkins);
+
+        SCM scm = build.getProject().getScm();
+        boolean hasScm = scm != null && !(scm instanceof NullSCM);
+        if (scm != null) {
+            // GIT_COMMIT, GIT_BRANCH and friends for the git plugin, read from the build's actions
+            scm.buildEnvironment(build, env);
+        }
+
+        Map<String, String> parameters = build.getBuildVariables();
+        if (parameters != null) {
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                env.putIfNotNull(parameter.getKey(), parameter.getValue());
+            }
+        }
+
+        for (EnvironmentContributingAction action : build.getActions(EnvironmentContributingAction.class)) {
+            action.buildEnvironment(build, env);
+        }
+
+        for (String name : required) {
+            if (!env.containsKey(name)) {
+                return fullEnvironment(build, listener, name);
+            }
+        }
+        if (hasScm) {
+            for (String name : SCM_VARIABLES) {
+                if (!env.containsKey(name)) {
+                    return fullEnvironment(build, listener, name);
+                }
+            }
+        }
+        return env;
+    }
+
+    private static EnvVars fullEnvironment(AbstractBuild<?, ?> build, TaskListener listener, String missing)
+        throws IOException, InterruptedException {
+        log.debug("{} is not set by a cheap source, computing the full environment of {}", missing, build);
+        return build.getEnvironment(listener);
+    }
+
+    // The subset of Run, Job and CoreEnvironmentContributor variables that needs neither the agent nor a lookup
+    private static void putBuildVariables(AbstractBuild<?, ?> build, EnvVars env, Jenkins jenkins) {
+        String jobName = build.getParent().getFullName();
+        env.put("JOB_NAME", jobName);
+        env.put("JOB_BASE_NAME", build.getParent().getName());
+        env.put("BUILD_NUMBER", String.valueOf(build.getNumber()));
+        env.put("BUILD_ID", build.getId());
+        env.putIfNotNull("BUILD_DISPLAY_NAME", build.getDisplayName());
+        env.put("BUILD_TAG", "jenkins-" + jobName.replace('/', '-') + "-" + build.getNumber());
+
+        String rootUrl = jenkins == null ? null : jenkins.getRootUrl();
+        if (rootUrl != null) {
+            env.put("JENKINS_URL", rootUrl);
+            env.put("BUILD_URL", rootUrl + build.getUrl());
+            env.put("JOB_URL", rootUrl + build.getParent().getUrl());
+        }
+
+        FilePath workspace = build.getWorkspace();
+        if (workspace != null) {
+            env.put("WORKSPACE", workspace.getRemote());
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package io.jenkins.plugins;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java Flight Recorder events for each stage of publishing a deploy, so a recording of the
+ * controller shows the plugin's own work instead of anonymous OkHttp and process frames.
+ *
+ * Stages are timed with {@link #begin(int)} and {@link #commit}, or {@link #end} and
+ * {@link #commitEnded} when working out the event's fields should not count. While no recording is running
+ * {@code begin} reads one volatile flag and returns null, nothing is allocated. The plugin still
+ * runs on Java 8 releases without {@code jdk.jfr}: the event classes are only loaded once the API
+ * was found, and every method here does nothing without it.
+ */
+public final class FlightEvents {
+
+    public static final int PAYLOAD_BUILD = 0;
+    public static final int TEMPLATE = 1;
+    public static final int GIT = 2;
+    public static final int HTTP = 3;
+
+    private static final Logger log = LoggerFactory.getLogger(FlightEvents.class);
+
+    // Kept up to date by Recorder, true while any recording runs
+    private static volatile boolean recording;
+
+    static {
+        install();
+    }
+
+    private FlightEvents() {
+    }
+
+    private static void install() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+        } catch (ClassNotFoundException | LinkageError e) {
+            log.debug("Java Flight Recorder is not available, OpsLevel events are off");
+            return;
+        }
+        try {
+            Recorder.install();
+        } catch (RuntimeException | LinkageError e) {
+            log.warn("Could not watch Java Flight Recorder recordings, OpsLevel events are off: {}", e.toString());
+        }
+    }
+
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * @param stage one of the stage constants
+     * @return the started event, null while nothing is recording
+     */
+    public static Object begin(int stage) {
+        if (!recording) {
+            return null;
+        }
+        return Recorder.begin(stage);
+    }
+
+    /**
+     * Ends an event's duration without committing it, so working out its sizes is not counted.
+     * Commit it with {@link #commitEnded}.
+     */
+    public static void end(Object event) {
+        if (event != null) {
+            Recorder.end(event);
+        }
+    }
+
+    /**
+     * Ends and commits an event.
+     */
+    public static void commit(Object event, String jobName, int buildNumber, long bytes) {
+        if (event != null) {
+            Recorder.commit(event, true, jobName, buildNumber, bytes);
+        }
+    }
+
+    /**
+     * Commits an event already ended with {@link #end}, keeping the duration it had then.
+     */
+    public static void commitEnded(Object event, String jobName, int buildNumber, long bytes) {
+        if (event != null) {
+            Recorder.commit(event, false, jobName, buildNumber, bytes);
+        }
+    }
+
+    /**
+     * Commits an {@link #HTTP} event with the host it was sent to and OpsLevel's answer, 0 if there was none.
+     */
+    public static void commitHttp(Object event, String jobName, int buildNumber, long bytes, String host, int status) {
+        if (event != null) {
+            Recorder.commitHttp(event, jobName, buildNumber, bytes, host, status);
+        }
+    }
+
+    /**
+     * Everything that refers to {@code jdk.jfr}, only loaded when the API is there. The methods
+     * above only hand it plain objects, so verifying them never loads an event class.
+     */
+    private static final class Recorder {
+
+        static void install() {
+            FlightRecorder.addListener(new FlightRecorderListener() {
+                @Override
+                public void recorderInitialized(FlightRecorder recorder) {
+                    update();
+                }
+
+                @Override
+                public void recordingStateChanged(Recording changed) {
+                    update();
+                }
+            });
+            // Does not start Flight Recorder when nothing else has
+            update();
+        }
+
+        static void update() {
+            boolean running = false;
+            if (FlightRecorder.isInitialized()) {
+                for (Recording r : FlightRecorder.getFlightRecorder().getRecordings()) {
+                    running |= r.getState() == RecordingState.RUNNING;
+                }
+            }
+            recording = running;
+        }
+
+        static Object begin(int stage) {
+            StageEvent event;
+            switch (stage) {
+                case PAYLOAD_BUILD:
+                    event = new PayloadBuildEvent();
+                    break;
+                case TEMPLATE:
+                    event = new TemplateEvent();
+                    break;
+                case GIT:
+                    event = new GitEvent();
+                    break;
+                default:
+                    event = new HttpEvent();
+                    break;
+            }
+            // The event type can be disabled in the recording's settings
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.begin();
+            return event;
+        }
+
+        static void end(Object event) {
+            ((Event) event).end();
+        }
+
+        static void commitHttp(Object event, String jobName, int buildNumber, long bytes, String host, int status) {
+            HttpEvent http = (HttpEvent) event;
+            http.host = host;
+            http.status = status;
+            commit(http, true, jobName, buildNumber, bytes);
+        }
+
+        static void commit(Object begun, boolean end, String jobName, int buildNumber, long bytes) {
+            StageEvent event = (StageEvent) begun;
+            // Calling end() again would move the end to now
+            if (end) {
+                event.end();
+            }
+            if (event.shouldCommit()) {
+                event.jobName = jobName;
+                event.buildNumber = buildNumber;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+    @Category({"Jenkins", "OpsLevel"})
+    abstract static class StageEvent extends Event {
+        @Label("Job")
+        String jobName;
+
+        @Label("Build Number")
+        int buildNumber;
+
+        @Label("Size")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+    }
+
+    @Name("io.jenkins.plugins.opslevel.PayloadBuild")
+    @Label("OpsLevel Payload Build")
+    @Description("Building the deploy payload for one target, size is the serialized JSON")
+    static final class PayloadBuildEvent extends StageEvent {
+    }
+
+    @Name("io.jenkins.plugins.opslevel.TemplateSubstitution")
+    @Label("OpsLevel Template Substitution")
+    @Description("Expanding one field template with the build's variables, size is the result")
+    static final class TemplateEvent extends StageEvent {
+    }
+
+    @Name("io.jenkins.plugins.opslevel.GitExecution")
+    @Label("OpsLevel Git Execution")
+    @Description("Reading a commit that was not cached from the workspace, size is the commit's fields")
+    static final class GitEvent extends StageEvent {
+    }
+
+    @Name("io.jenkins.plugins.opslevel.HttpDelivery")
+    @Label("OpsLevel HTTP Delivery")
+    @Description("One attempt at sending a deploy to OpsLevel, size is the request body")
+    static final class HttpEvent extends StageEvent {
+        @Label("Host")
+        String host;
+
+        @Label("Status")
+        int status;
+    }
+}
@@ -0,0 +1,135 @@
+package io.jenkins.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a commit's metadata by running {@code git log -1} with a format that asks for exactly
+ * the fields of a {@link CommitRecord} and no diff.
+ *
+ * Both output streams are drained on their own threads while git runs, so it can never block
+ * on a full pipe, and only the first {@code maxOutputBytes} of each are kept. Git is killed if it
+ * has not finished within the timeout.
+ */
+public class GitCommandReader {
+
+    // NUL never appears in any of these fields, %s is a single line
+    static final String FORMAT = "%H%x00%s%x00%an%x00%ae%x00%at%x00%cn%x00%ce%x00%ct";
+
+    private static final Pattern SHA = Pattern.compile("[0-9a-fA-F]{7,64}");
+
+    private static final Logger log = LoggerFactory.getLogger(GitCommandReader.class);
+
+    private final long timeoutMillis;
+    private final int maxOutputBytes;
+
+    public GitCommandReader(long timeoutMillis, int maxOutputBytes) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    /**
+     * @return the commit, or null if git is not available, the commit is unknown or git did not answer in time
+     */
+    public CommitRecord read(File workTree, String sha) throws InterruptedException {
+        if (!SHA.matcher(sha).matches()) {
+            // Never hand git anything that could be read as an option
+            log.warn("Not reading commit metadata for {}, it is not a commit SHA", sha);
+            return null;
+        }
+
+        Process process;
+        try {
+            process = new ProcessBuilder("git", "log", "-1", "--no-color", "--encoding=UTF-8", "--format=" + FORMAT, sha, "--")
+                .directory(workTree)
+                .start();
+        } catch (IOException e) {
+            log.warn("Could not run git in {}: {}", workTree, e.toString());
+            return null;
+        }
+        try {
+            // git log reads nothing from stdin
+            process.getOutputStream().close();
+        } catch (IOException e) {
+            log.debug("Could not close the stdin of git: {}", e.toString());
+        }
+
+        Drain stdout = new Drain(process.getInputStream(), maxOutputBytes, "OpsLevel git stdout");
+        Drain stderr = new Drain(process.getErrorStream(), maxOutputBytes, "OpsLevel git stderr");
+        try {
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("git log {} in {} did not finish within {} ms, killing it", sha, workTree, timeoutMillis);
+                return null;
+            }
+            // Both pipes hit EOF once git exits
+            stdout.join(timeoutMillis);
+            stderr.join(timeoutMillis);
+        } finally {
+            process.destroyForcibly();
+        }
+
+        if (process.exitValue() != 0) {
+            log.warn("git log {} in {} failed with exit code {}: {}", sha, workTree, process.exitValue(), stderr.text().trim());
+            return null;
+        }
+        return parse(stdout.text());
+    }
+
+    static CommitRecord parse(String output) {
+        String[] fields = output.trim().split("\u0000", -1);
+        if (fields.length < 8) {
+            return null;
+        }
+        try {
+            return new CommitRecord(fields[0], fields[1], fields[2], fields[3], Long.parseLong(fields[4]),
+                fields[5], fields[6], Long.parseLong(fields[7]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a stream to the end on its own thread, keeping at most {@code limit} bytes.
+     */
+    private static class Drain extends Thread {
+        private final InputStream in;
+        private final ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        private final int limit;
+
+        Drain(InputStream in, int limit, String name) {
+            super(name);
+            this.in = in;
+            this.limit = limit;
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[8192];
+            try (InputStream stream = in) {
+                int read;
+                while ((read = stream.read(buffer)) != -1) {
+                    int keep = Math.min(read, limit - kept.size());
+                    if (keep > 0) {
+                        kept.write(buffer, 0, keep);
+                    }
+                }
+            } catch (IOException e) {
+                // The process was killed
+            }
+        }
+
+        String text() {
+            return new String(kept.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
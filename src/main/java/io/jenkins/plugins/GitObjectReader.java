@@ -0,0 +1,638 @@
+package io.jenkins.plugins;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads commits straight from a repository's {@code .git} directory, without running git.
+ *
+ * Supports loose objects, pack files through their version 2 {@code .idx} (with offset and ref
+ * deltas), loose refs and {@code packed-refs}. That covers what a checkout leaves in a workspace;
+ * anything else (alternates, shallow grafts, SHA-256 repositories) makes {@link #readCommit}
+ * return null or throw, and callers fall back to {@link GitCommandReader}.
+ *
+ * Packs are read with positional reads rather than mapped, so {@link #close} releases them at
+ * once and git can repack or delete them, which Windows refuses while a file is mapped.
+ */
+public class GitObjectReader implements Closeable {
+
+    static final int OBJ_COMMIT = 1;
+    static final int OBJ_TAG = 4;
+    private static final int OBJ_OFS_DELTA = 6;
+    private static final int OBJ_REF_DELTA = 7;
+
+    // Commits are small, a huge object means we were pointed at the wrong thing
+    private static final int MAX_OBJECT_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_DELTA_DEPTH = 64;
+    private static final int MAX_REF_DEPTH = 5;
+
+    private static final Pattern FULL_SHA = Pattern.compile("[0-9a-fA-F]{40}");
+    private static final String[] REF_PREFIXES = {"", "refs/", "refs/tags/", "refs/heads/", "refs/remotes/"};
+
+    private final File gitDir;
+    private final File objectsDir;
+    private List<Pack> packs;
+
+    public GitObjectReader(File gitDir) throws IOException {
+        this.gitDir = gitDir;
+        // Linked worktrees keep their objects and most refs in the main repository
+        File commonDir = gitDir;
+        File commonDirFile = new File(gitDir, "commondir");
+        if (commonDirFile.isFile()) {
+            String path = readFirstLine(commonDirFile);
+            commonDir = new File(path).isAbsolute() ? new File(path) : new File(gitDir, path);
+        }
+        this.objectsDir = new File(commonDir, "objects");
+    }
+
+    /**
+     * @return the {@code .git} directory of a work tree, following a {@code gitdir:} file, or null if there is none
+     */
+    public static File findGitDir(File workTree) throws IOException {
+        File dotGit = new File(workTree, ".git");
+        if (dotGit.isDirectory()) {
+            return dotGit;
+        }
+        if (dotGit.isFile()) {
+            String line = readFirstLine(dotGit);
+            if (line.startsWith("gitdir:")) {
+                File target = new File(line.substring("gitdir:".length()).trim());
+                return target.isAbsolute() ? target : new File(workTree, target.getPath());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param revision a full SHA, or a ref such as {@code HEAD}, {@code master} or {@code refs/remotes/origin/main}
+     * @return the commit, or null if it is not in this repository
+     */
+    public CommitRecord readCommit(String revision) throws IOException {
+        String sha = resolve(revision);
+        if (sha == null) {
+            return null;
+        }
+        RawObject object = readObject(sha);
+        // Annotated tags point at the commit
+        for (int depth = 0; object != null && object.type == OBJ_TAG && depth < MAX_REF_DEPTH; depth++) {
+            sha = header(object.data, "object");
+            object = sha == null ? null : readObject(sha);
+        }
+        if (object == null || object.type != OBJ_COMMIT) {
+            return null;
+        }
+        return parseCommit(sha, object.data);
+    }
+
+    /**
+     * @return the SHA a revision points to, or null if it does not resolve
+     */
+    public String resolve(String revision) throws IOException {
+        if (FULL_SHA.matcher(revision).matches()) {
+            return revision.toLowerCase();
+        }
+        String ref = revision;
+        for (int depth = 0; depth < MAX_REF_DEPTH; depth++) {
+            String value = readRef(ref);
+            if (value == null) {
+                return null;
+            }
+            if (!value.startsWith("ref:")) {
+                return FULL_SHA.matcher(value).matches() ? value.toLowerCase() : null;
+            }
+            ref = value.substring("ref:".length()).trim();
+        }
+        return null;
+    }
+
+    RawObject readObject(String sha) throws IOException {
+        return readObject(sha, 0);
+    }
+
+    @Override
+    public void close() {
+        if (packs != null) {
+            for (Pack pack : packs) {
+                pack.close();
+            }
+            packs = null;
+        }
+    }
+
+    private RawObject readObject(String sha, int depth) throws IOException {
+        File loose = new File(objectsDir, sha.substring(0, 2) + "/" + sha.substring(2));
+        if (loose.isFile()) {
+            return readLoose(loose);
+        }
+        byte[] id = toBytes(sha);
+        for (Pack pack : packs()) {
+            long offset = pack.find(id);
+            if (offset >= 0) {
+                return readPacked(pack, offset, depth);
+            }
+        }
+        return null;
+    }
+
+    private static RawObject readLoose(File file) throws IOException {
+        try (InputStream in = new InflaterInputStream(new FileInputStream(file))) {
+            // "<type> <size>\0<data>"
+            StringBuilder header = new StringBuilder();
+            int c;
+            while ((c = in.read()) > 0) {
+                header.append((char) c);
+            }
+            if (c < 0) {
+                throw new EOFException("Truncated object " + file);
+            }
+            int space = header.indexOf(" ");
+            int type = typeOf(header.substring(0, space));
+            int size = checkSize(Long.parseLong(header.substring(space + 1)));
+            byte[] data = new byte[size];
+            int read = 0;
+            while (read < size) {
+                int n = in.read(data, read, size - read);
+                if (n < 0) {
+                    throw new EOFException("Truncated object " + file);
+                }
+                read += n;
+            }
+            return new RawObject(type, data);
+        }
+    }
+
+    private RawObject readPacked(Pack pack, long offset, int depth) throws IOException {
+        if (depth > MAX_DELTA_DEPTH) {
+            throw new IOException("Delta chain too long in " + pack.file);
+        }
+        PackInput data = new PackInput(pack, checkPosition(offset, pack));
+
+        // Type and inflated size, the size in little-endian groups of 7 bits after the first 4
+        int c = data.get() & 0xff;
+        int type = (c >> 4) & 7;
+        long size = c & 0x0f;
+        int shift = 4;
+        while ((c & 0x80) != 0) {
+            c = data.get() & 0xff;
+            size |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        }
+
+        if (type == OBJ_OFS_DELTA) {
+            // Big-endian groups of 7 bits, each continuation adding one so encodings are unique
+            c = data.get() & 0xff;
+            long distance = c & 0x7f;
+            while ((c & 0x80) != 0) {
+                c = data.get() & 0xff;
+                distance = ((distance + 1) << 7) | (c & 0x7f);
+            }
+            byte[] delta = inflate(data, checkSize(size));
+            RawObject base = readPacked(pack, offset - distance, depth + 1);
+            return new RawObject(base.type, applyDelta(base.data, delta));
+        }
+        if (type == OBJ_REF_DELTA) {
+            byte[] baseId = new byte[20];
+            for (int i = 0; i < baseId.length; i++) {
+                baseId[i] = data.get();
+            }
+            byte[] delta = inflate(data, checkSize(size));
+            RawObject base = readObject(toHex(baseId), depth + 1);
+            if (base == null) {
+                throw new IOException("Missing delta base " + toHex(baseId) + " in " + pack.file);
+            }
+            return new RawObject(base.type, applyDelta(base.data, delta));
+        }
+        return new RawObject(type, inflate(data, checkSize(size)));
+    }
+
+    private static byte[] inflate(PackInput data, int size) throws IOException {
+        byte[] out = new byte[size];
+        byte[] in = new byte[Math.min(8192, Math.max(64, size + 64))];
+        Inflater inflater = new Inflater();
+        try {
+            int written = 0;
+            while (written < size) {
+                if (inflater.needsInput()) {
+                    int length = data.get(in);
+                    if (length <= 0) {
+                        throw new EOFException("Truncated pack entry");
+                    }
+                    inflater.setInput(in, 0, length);
+                }
+                int n = inflater.inflate(out, written, size - written);
+                if (n == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                    break;
+                }
+                written += n;
+            }
+            if (written != size) {
+                throw new IOException("Pack entry is " + written + " bytes, expected " + size);
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt pack entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static byte[] applyDelta(byte[] base, byte[] delta) throws IOException {
+        int[] position = {0};
+        long baseSize = readVarint(delta, position);
+        if (baseSize != base.length) {
+            throw new IOException("Delta expects a base of " + baseSize + " bytes, got " + base.length);
+        }
+        byte[] result = new byte[checkSize(readVarint(delta, position))];
+        int p = position[0];
+        int written = 0;
+        while (p < delta.length) {
+            int op = delta[p++] & 0xff;
+            if ((op & 0x80) != 0) {
+                // Copy from the base, offset and size bytes present as flagged
+                int offset = 0;
+                int size = 0;
+                for (int i = 0; i < 4; i++) {
+                    if ((op & (1 << i)) != 0) {
+                        offset |= (delta[p++] & 0xff) << (8 * i);
+                    }
+                }
+                for (int i = 0; i < 3; i++) {
+                    if ((op & (0x10 << i)) != 0) {
+                        size |= (delta[p++] & 0xff) << (8 * i);
+                    }
+                }
+                if (size == 0) {
+                    size = 0x10000;
+                }
+                System.arraycopy(base, offset, result, written, size);
+                written += size;
+            } else if (op != 0) {
+                // Insert the next op bytes of the delta
+                System.arraycopy(delta, p, result, written, op);
+                p += op;
+                written += op;
+            } else {
+                throw new IOException("Corrupt delta");
+            }
+        }
+        if (written != result.length) {
+            throw new IOException("Delta produced " + written + " bytes, expected " + result.length);
+        }
+        return result;
+    }
+
+    private static long readVarint(byte[] data, int[] position) {
+        long value = 0;
+        int shift = 0;
+        int c;
+        do {
+            c = data[position[0]++] & 0xff;
+            value |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return value;
+    }
+
+    private List<Pack> packs() throws IOException {
+        if (packs == null) {
+            List<Pack> found = new ArrayList<>();
+            File[] indexes = new File(objectsDir, "pack").listFiles((dir, name) -> name.endsWith(".idx"));
+            // Kept before any pack is opened, so close() releases those opened before a failure
+            packs = found;
+            if (indexes != null) {
+                for (File index : indexes) {
+                    File pack = new File(index.getPath().replaceFirst("\\.idx$", ".pack"));
+                    if (pack.isFile()) {
+                        found.add(new Pack(index, pack));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    private String readRef(String name) throws IOException {
+        for (String prefix : REF_PREFIXES) {
+            String ref = prefix + name;
+            File loose = new File(gitDir, ref);
+            if (!loose.isFile()) {
+                // Shared refs of a linked worktree
+                loose = new File(objectsDir.getParentFile(), ref);
+            }
+            if (loose.isFile()) {
+                return readFirstLine(loose).trim();
+            }
+            String packed = readPackedRef(ref);
+            if (packed != null) {
+                return packed;
+            }
+        }
+        return null;
+    }
+
+    private String readPackedRef(String ref) throws IOException {
+        File packedRefs = new File(objectsDir.getParentFile(), "packed-refs");
+        if (!packedRefs.isFile()) {
+            return null;
+        }
+        // "<sha> <ref>" per line, with '#' comments and '^' lines for peeled tags
+        for (String line : Files.readAllLines(packedRefs.toPath(), StandardCharsets.UTF_8)) {
+            if (line.length() > 41 && line.charAt(40) == ' ' && line.substring(41).equals(ref)) {
+                return line.substring(0, 40);
+            }
+        }
+        return null;
+    }
+
+    static CommitRecord parseCommit(String sha, byte[] data) {
+        String text = new String(data, StandardCharsets.UTF_8);
+        int headersEnd = text.indexOf("\n\n");
+        String headers = headersEnd < 0 ? text : text.substring(0, headersEnd);
+        String message = headersEnd < 0 ? "" : text.substring(headersEnd + 2);
+
+        String[] author = identity(headers, "author");
+        String[] committer = identity(headers, "committer");
+        return new CommitRecord(sha, subject(message),
+            author[0], author[1], Long.parseLong(author[2]),
+            committer[0], committer[1], Long.parseLong(committer[2]));
+    }
+
+    // What git log prints for %s: the first paragraph of the message on one line
+    private static String subject(String message) {
+        StringBuilder subject = new StringBuilder();
+        for (String line : message.split("\n", -1)) {
+            if (line.trim().isEmpty()) {
+                if (subject.length() > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (subject.length() > 0) {
+                subject.append(' ');
+            }
+            subject.append(line.trim());
+        }
+        return subject.toString();
+    }
+
+    // "Name <email> 1622000000 +0200" as {name, email, epoch seconds}
+    private static String[] identity(String headers, String name) {
+        String line = header(headers, name);
+        if (line == null) {
+            return new String[]{"", "", "0"};
+        }
+        int open = line.lastIndexOf('<');
+        int close = line.lastIndexOf('>');
+        if (open < 0 || close < open) {
+            return new String[]{line.trim(), "", "0"};
+        }
+        String[] when = line.substring(close + 1).trim().split(" ");
+        return new String[]{line.substring(0, open).trim(), line.substring(open + 1, close),
+            when[0].matches("-?\\d+") ? when[0] : "0"};
+    }
+
+    private static String header(byte[] data, String name) {
+        return header(new String(data, StandardCharsets.UTF_8), name);
+    }
+
+    private static String header(String text, String name) {
+        for (String line : text.split("\n")) {
+            if (line.isEmpty()) {
+                break;
+            }
+            if (line.startsWith(name + " ")) {
+                return line.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static int typeOf(String name) throws IOException {
+        switch (name) {
+            case "commit":
+                return OBJ_COMMIT;
+            case "tree":
+                return 2;
+            case "blob":
+                return 3;
+            case "tag":
+                return OBJ_TAG;
+            default:
+                throw new IOException("Unknown object type " + name);
+        }
+    }
+
+    private static int checkSize(long size) throws IOException {
+        if (size < 0 || size > MAX_OBJECT_SIZE) {
+            throw new IOException("Object of " + size + " bytes is too large to read");
+        }
+        return (int) size;
+    }
+
+    private static long checkPosition(long offset, Pack pack) throws IOException {
+        if (offset < 12 || offset >= pack.length) {
+            throw new IOException("Offset " + offset + " is outside of " + pack.file);
+        }
+        return offset;
+    }
+
+    private static String readFirstLine(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        return lines.isEmpty() ? "" : lines.get(0);
+    }
+
+    private static byte[] toBytes(String sha) {
+        byte[] bytes = new byte[sha.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(sha.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    static class RawObject {
+        final int type;
+        final byte[] data;
+
+        RawObject(int type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A pack file and its version 2 index, both open read-only. Only the fan-out table is held in
+     * memory, the rest is read at the position needed.
+     */
+    private static class Pack implements Closeable {
+        private static final int FANOUT = 8;
+        private static final int SHAS = FANOUT + 256 * 4;
+
+        final File file;
+        final FileChannel index;
+        final FileChannel data;
+        final long length;
+        final int[] fanout = new int[256];
+        final int count;
+
+        Pack(File indexFile, File packFile) throws IOException {
+            this.file = packFile;
+            this.index = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+            try {
+                this.data = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+            } catch (IOException e) {
+                index.close();
+                throw e;
+            }
+            this.length = data.size();
+            try {
+                ByteBuffer header = read(index, 0, SHAS, indexFile);
+                if (header.getInt(0) != 0xff744f63 || header.getInt(4) != 2) {
+                    throw new IOException("Unsupported pack index " + indexFile);
+                }
+                for (int i = 0; i < fanout.length; i++) {
+                    fanout[i] = header.getInt(FANOUT + i * 4);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            this.count = fanout[255];
+        }
+
+        /**
+         * @return the offset of the object in the pack, or -1 if the pack does not have it
+         */
+        long find(byte[] id) throws IOException {
+            int first = id[0] & 0xff;
+            int low = first == 0 ? 0 : fanout[first - 1];
+            int high = fanout[first];
+            ByteBuffer sha = ByteBuffer.allocate(20);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int cmp = compare(id, readFully(index, sha, SHAS + middle * 20L, file));
+                if (cmp == 0) {
+                    return offset(middle);
+                } else if (cmp < 0) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return -1;
+        }
+
+        private static int compare(byte[] id, ByteBuffer sha) {
+            for (int i = 0; i < 20; i++) {
+                int diff = (id[i] & 0xff) - (sha.get(i) & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        }
+
+        private long offset(int entry) throws IOException {
+            // After the SHAs come 4 byte CRCs, then 4 byte offsets, then 8 byte offsets for large packs
+            long offsets = SHAS + count * 24L;
+            int offset = read(index, offsets + entry * 4L, 4, file).getInt(0);
+            if ((offset & 0x80000000) == 0) {
+                return offset;
+            }
+            return read(index, offsets + count * 4L + (offset & 0x7fffffff) * 8L, 8, file).getLong(0);
+        }
+
+        @Override
+        public void close() {
+            try {
+                index.close();
+                if (data != null) {
+                    data.close();
+                }
+            } catch (IOException e) {
+                // Read-only, nothing was lost
+            }
+        }
+
+        private static ByteBuffer read(FileChannel channel, long position, int size, File file) throws IOException {
+            return readFully(channel, ByteBuffer.allocate(size), position, file);
+        }
+
+        private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long position, File file) throws IOException {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Truncated " + file);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Reads a pack entry forwards from its offset, a block at a time.
+     */
+    private static class PackInput {
+        private final Pack pack;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        private long position;
+
+        PackInput(Pack pack, long position) {
+            this.pack = pack;
+            this.position = position;
+            buffer.limit(0);
+        }
+
+        byte get() throws IOException {
+            if (!buffer.hasRemaining() && fill() <= 0) {
+                throw new EOFException("Truncated pack entry in " + pack.file);
+            }
+            return buffer.get();
+        }
+
+        /**
+         * @return bytes copied into {@code into}, -1 at the end of the pack
+         */
+        int get(byte[] into) throws IOException {
+            if (!buffer.hasRemaining() && fill() <= 0) {
+                return -1;
+            }
+            int length = Math.min(into.length, buffer.remaining());
+            buffer.get(into, 0, length);
+            return length;
+        }
+
+        private int fill() throws IOException {
+            buffer.clear();
+            int n = pack.data.read(buffer, position);
+            buffer.flip();
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
@@ -2,49 +2,96 @@ package io.jenkins.plugins;
 
 import hudson.Extension;
 import hudson.EnvVars;
+import hudson.ExtensionList;
+import hudson.FilePath;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
 import hudson.model.AbstractBuild;
 import hudson.model.Result;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
 import okhttp3.*;
+import okio.Utf8;
 
 import java.io.*;
-import java.nio.charset.Charset;
 import java.util.*;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import javax.json.Json;
-import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.text.StringSubstitutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Extension
 public class JobListener extends RunListener<AbstractBuild> {
 
-    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
-    private OkHttpClient client;
+    private final DeployDispatcher dispatcher;
+    private final CircuitBreakingSender breakers;
+    private final RateLimitingSender rateLimiter;
+    private DeployOutbox outbox;
+    private DiagnosticCapture diagnostics;
+    private CommitCache commitCache;
+    // Blocking sends to several targets of one build run side by side, idle threads go away after a minute
+    private final ExecutorService fanOut = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "OpsLevel fan-out");
+        t.setDaemon(true);
+        return t;
+    });
+    private DeployBatcher batcher;
+    private RetryingSender retrier;
 
     private static final Logger log = LoggerFactory.getLogger(JobListener.class);
 
+    // Only the fields of one commit are read, 64k is plenty for a long subject line
+    private static final long GIT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int GIT_MAX_OUTPUT_BYTES = 64 * 1024;
+
+    private static final Template DEFAULT_DESCRIPTION = Template.compile("Jenkins Deploy #${BUILD_NUMBER}");
+
     public JobListener() {
         super(AbstractBuild.class);
-        client = new OkHttpClient();
+        dispatcher = new DeployDispatcher(() -> OpsLevelGlobalConfiguration.get().getHttpClient());
+        breakers = new CircuitBreakingSender(
+            event -> dispatcher.submit(event, OpsLevelGlobalConfiguration.get().getDispatcherQueueCapacity()),
+            () -> OpsLevelGlobalConfiguration.get().getCircuitBreakerSettings());
+        rateLimiter = new RateLimitingSender(breakers,
+            () -> OpsLevelGlobalConfiguration.get().getRateLimitPerSecond(),
+            () -> OpsLevelGlobalConfiguration.get().getRateLimitBurst());
     }
 
     @Override
     public void onCompleted(AbstractBuild build, @Nonnull TaskListener listener) {
-        WebHookPublisher publisher = GetWebHookPublisher(build);
-        if (publisher == null) {
+        if (OpsLevelGlobalConfiguration.get().isPublishOnFinalized()) {
             return;
         }
+        List<WebHookPublisher> publishers = GetWebHookPublishers(build);
+        if (publishers.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            publishCompleted(publishers, build, listener);
+        } finally {
+            // Still part of the build's duration, added before the build is saved for the last time
+            long held = System.nanoTime() - start;
+            DeliveryMetrics.get().getHeldOnCompleted().record(held);
+            build.addAction(new PublishLatencyAction(PublishLatencyAction.COMPLETED, held));
+        }
+    }
 
+    private void publishCompleted(List<WebHookPublisher> publishers, AbstractBuild build, TaskListener listener) {
         Result result = build.getResult();
         if (result == null) {
             return;
@@ -54,81 +101,401 @@ public class JobListener extends RunListener<AbstractBuild> {
 
         // Send the webhook on successful deploys. UNSTABLE could be successful depending on how the pipeline is set up
         if (result.equals(Result.SUCCESS) || result.equals(Result.UNSTABLE)) {
+            DeployContext context;
             try {
-                JsonObject payload = buildDeployPayload(publisher, build, listener);
-                String webHookUrl = publisher.webHookUrl;
-                buildConsole.print("Publishing deploy to OpsLevel via: " + webHookUrl + "\n");
-                httpPost(webHookUrl, payload, buildConsole);
+                context = resolveContext(publishers, build, listener);
             }
             catch(Exception e) {
                 String message = e.toString() + ". Could not publish deploy to OpsLevel.\n";
                 log.error(message);
                 buildConsole.print("Error :" + message);
+                return;
+            }
+
+            if (publishers.size() == 1) {
+                publish(publishers.get(0), build, context, buildConsole, true);
+            } else {
+                publishAll(publishers, build, context, buildConsole);
             }
         }
 
     }
 
-    private WebHookPublisher GetWebHookPublisher(AbstractBuild build) {
-        for (Object publisher : build.getProject().getPublishersList().toMap().values()) {
-            if (publisher instanceof WebHookPublisher) {
-                return (WebHookPublisher) publisher;
+    /**
+     * Publishes once the build is over and its log closed, so nothing the plugin does shows up in
+     * the build's duration. Deploys are always queued for background delivery, outcomes go to the
+     * Jenkins system log.
+     */
+    @Override
+    public void onFinalized(AbstractBuild build) {
+        if (!OpsLevelGlobalConfiguration.get().isPublishOnFinalized()) {
+            return;
+        }
+        List<WebHookPublisher> publishers = GetWebHookPublishers(build);
+        if (publishers.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            Result result = build.getResult();
+            if (result != null && result.isBetterOrEqualTo(Result.UNSTABLE)) {
+                DeployContext context = resolveContext(publishers, build, TaskListener.NULL);
+                for (WebHookPublisher publisher : publishers) {
+                    String outcome = publish(publisher, build, context, TaskListener.NULL.getLogger(), false);
+                    log.info("Deploy of {} to {}: {}", build.getFullDisplayName(), publisher.webHookUrl, outcome);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Could not publish deploy of {} to OpsLevel: {}", build.getFullDisplayName(), e.toString());
+        } finally {
+            long held = System.nanoTime() - start;
+            DeliveryMetrics.get().getHeldOnFinalized().record(held);
+            build.addAction(new PublishLatencyAction(PublishLatencyAction.FINALIZED, held));
+            try {
+                // The build was already saved for the last time
+                build.save();
+            } catch (IOException e) {
+                log.warn("Could not save {}: {}", build.getFullDisplayName(), e.toString());
             }
         }
-        return null;
     }
 
-    private void httpPost(String webHookUrl, JsonObject payload, PrintStream buildConsole) throws IOException {
-        // Get the plugin version to pass through as a request parameter
-        final Properties properties = new Properties();
-        String version = "";
-        // Have to catch the potential IO Exception
-        try {
-            // TODO: In development this seems to pull from src/main/config.properties, instead of target/classes/properties
-            //       Once the plugin is compiled it will get the correct version string, but we could not figure out how
-            //       to get it looking at the right place in development
-            properties.load(getClass().getClassLoader().getResourceAsStream("config.properties"));
-            version = properties.getProperty("plugin.version");
+    /**
+     * Publishes to every target at once. Each target writes to its own buffer, which is copied to
+     * the build log in configuration order once all of them are done.
+     */
+    private void publishAll(List<WebHookPublisher> publishers, AbstractBuild build, DeployContext context,
+                            PrintStream buildConsole) {
+        int targets = publishers.size();
+        List<ByteArrayOutputStream> consoles = new ArrayList<>(targets);
+        List<CompletableFuture<String>> outcomes = new ArrayList<>(targets);
+        for (WebHookPublisher publisher : publishers) {
+            ByteArrayOutputStream console = new ByteArrayOutputStream();
+            consoles.add(console);
+            outcomes.add(CompletableFuture.supplyAsync(
+                () -> publish(publisher, build, context, newPrintStream(console), true), fanOut));
         }
-        catch (Exception e) {
-            log.error("Project properties does not exist. {}", e.toString());
+
+        buildConsole.print("Publishing deploy to " + targets + " OpsLevel targets.\n");
+        for (int i = 0; i < targets; i++) {
+            String outcome;
+            try {
+                outcome = outcomes.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                buildConsole.print("Interrupted while publishing to OpsLevel, remaining targets finish in the background.\n");
+                return;
+            } catch (ExecutionException e) {
+                outcome = "failed: " + e.getCause();
+            }
+            buildConsole.print("OpsLevel target " + (i + 1) + "/" + targets + " (" + publishers.get(i).webHookUrl + "): "
+                + outcome + "\n");
+            buildConsole.print(new String(consoles.get(i).toByteArray(), StandardCharsets.UTF_8));
         }
-        String agent = "jenkins-" + version;
+    }
 
-        // Build the URL with query params
-        HttpUrl.Builder httpBuilder = HttpUrl.parse(webHookUrl).newBuilder();
-        HttpUrl url = httpBuilder
-            .addQueryParameter("agent", agent)
-            .build();
+    private static PrintStream newPrintStream(ByteArrayOutputStream out) {
+        try {
+            return new PrintStream(out, true, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-        // Build the body
-        String jsonString = payload.toString();
-        log.info("Sending OpsLevel Integration payload:\n{}", jsonString);
+    /**
+     * Publishes a deploy from the {@code opslevelDeploy} Pipeline step, using the step's environment.
+     *
+     * @param workspace where the commit can be read, null outside of a node block
+     * @param wait false to queue the deploy and return without waiting for OpsLevel
+     * @return what happened to the deploy
+     */
+    String publishFromStep(WebHookPublisher target, Run<?, ?> run, FilePath workspace, EnvVars env,
+                           TaskListener listener, boolean wait) throws InterruptedException {
+        return publish(target, run, newContext(run, workspace, env, -1), listener.getLogger(), wait);
+    }
 
-        RequestBody body = RequestBody.create(JSON_MEDIA_TYPE, jsonString);
+    /**
+     * @param wait false to hand the deploy to background delivery even if the global settings deliver right away
+     * @return what happened to the deploy, for the build log
+     */
+    private String publish(WebHookPublisher publisher, Run<?, ?> build, DeployContext context, PrintStream buildConsole,
+                           boolean wait) {
+        DeliveryRecordAction.Delivery delivery = null;
+        String outcome;
+        try {
+            Object jfr = FlightEvents.begin(FlightEvents.PAYLOAD_BUILD);
+            DeployPayload payload = buildDeployPayload(publisher, build, context);
+            if (jfr != null) {
+                // Only serialized up front while recording, otherwise it is streamed into the request
+                FlightEvents.end(jfr);
+                FlightEvents.commitEnded(jfr, build.getParent().getFullName(), build.getNumber(),
+                    Utf8.size(payload.toJson()));
+            }
+            String webHookUrl = publisher.webHookUrl;
+            DeliveryRecordAction record = DeliveryRecordAction.of(build);
+            record.setStages(context.envNanos, context.gitNanos);
+            delivery = record.add(payload.dedupId, webHookUrl);
+            DeployEvent event = new DeployEvent(webHookUrl, payload.dedupId, payload,
+                build.getParent().getFullName(), build.getNumber(), delivery);
+            buildConsole.print("Publishing deploy to OpsLevel via: " + webHookUrl + "\n");
+
+            OpsLevelGlobalConfiguration config = OpsLevelGlobalConfiguration.get();
+            if (config.isDurableOutbox()) {
+                getOutbox().append(event);
+                buildConsole.print("Deploy recorded in the OpsLevel outbox for delivery.\n");
+                outcome = "recorded in the outbox";
+            } else if ((!wait || config.isAsyncDelivery() || config.isBatchDelivery()) && sendInBackground(event) != null) {
+                buildConsole.print("Deploy queued for background delivery to OpsLevel.\n");
+                outcome = "queued";
+            } else {
+                outcome = sendNow(event, buildConsole);
+            }
+        }
+        catch(Exception e) {
+            String message = e.toString() + ". Could not publish deploy to OpsLevel.\n";
+            log.error(message);
+            buildConsole.print("Error :" + message);
+            outcome = "failed: " + e;
+        }
+        if (delivery != null) {
+            delivery.setOutcome(outcome);
+        }
+        return outcome;
+    }
 
-        // Finally, put the request together
-        Request request = new Request.Builder()
-            .url(url)
-            .post(body)
-            .build();
+    private String sendNow(DeployEvent event, PrintStream buildConsole) throws IOException {
+        OpsLevelGlobalConfiguration config = OpsLevelGlobalConfiguration.get();
+        if (!rateLimiter.tryAcquire(event.webHookUrl) && getRetrier().send(event) != null) {
+            // The build does not wait for a token, the rate limiter queues the deploy instead
+            buildConsole.print("OpsLevel rate limit for " + event.webHookUrl + " reached, deploy queued for delivery.\n");
+            return "queued, rate limited";
+        }
 
+        DeliveryResult delivered = null;
+        IOException failure = null;
         try {
-            Response response = client.newCall(request).execute();
-            log.info("Invocation of webhook {} successful", url);
-            ResponseBody responseBody = response.body();
-            if (responseBody != null) {
-                String message = "Response: " + responseBody.string() + "\n";
-                buildConsole.print(message);
-                log.info(message);
+            delivered = breakers.sendNow(event, e -> dispatcher.send(e, buildConsole));
+            if (delivered == null) {
+                // Don't make the build wait on timeouts from an endpoint that is known to be failing
+                DeliveryResult open = CircuitBreakingSender.openResult(breakers.breakerFor(event.webHookUrl));
+                buildConsole.print(open.body + ", delivering the deploy in the background.\n");
+                getRetrier().retry(event, 1, open, null);
+                return "queued, circuit open";
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        RetryPolicy retryPolicy = config.getRetryPolicy();
+        if (!retryPolicy.isEnabled() || !retryPolicy.isRetryable(delivered, failure)) {
+            if (failure != null) {
+                throw failure;
+            }
+            return (delivered.isSuccessful() ? "delivered, HTTP " : "rejected, HTTP ") + delivered.code;
+        }
+        // Later attempts wait on the retry timer, the build does not
+        getRetrier().retry(event, 1, delivered, failure);
+        buildConsole.print("OpsLevel could not take the deploy yet ("
+            + (failure != null ? failure.toString() : String.valueOf(delivered.code)) + "), retrying in the background.\n");
+        return "retrying in the background";
+    }
+
+    private CompletableFuture<DeliveryResult> sendInBackground(DeployEvent event) {
+        if (OpsLevelGlobalConfiguration.get().isBatchDelivery()) {
+            return getBatcher().send(event);
+        }
+        return getRetrier().send(event);
+    }
+
+    synchronized RetryingSender getRetrier() {
+        if (retrier == null) {
+            retrier = new RetryingSender(rateLimiter, () -> OpsLevelGlobalConfiguration.get().getRetryPolicy());
+        }
+        return retrier;
+    }
+
+    synchronized DeployBatcher getBatcher() {
+        if (batcher == null) {
+            // Batches are retried as a whole, events OpsLevel acknowledged as transient one by one
+            batcher = new DeployBatcher(
+                getRetrier(),
+                getRetrier(),
+                () -> OpsLevelGlobalConfiguration.get().getBatchMaxEvents(),
+                () -> OpsLevelGlobalConfiguration.get().getBatchWindowMillis());
+        }
+        return batcher;
+    }
+
+    synchronized DeployOutbox getOutbox() throws IOException {
+        if (outbox == null) {
+            File dir = new File(Jenkins.get().getRootDir(), "opslevel/outbox");
+            outbox = new DeployOutbox(dir, this::sendInBackground);
+        }
+        return outbox;
+    }
+
+    synchronized DiagnosticCapture getDiagnostics() {
+        if (diagnostics == null) {
+            // Five files of 1 MB at most
+            File dir = new File(Jenkins.get().getRootDir(), "opslevel/diagnostics");
+            diagnostics = new DiagnosticCapture(dir, 1024 * 1024, 5);
+        }
+        return diagnostics;
+    }
+
+    synchronized CommitCache getCommitCache() {
+        if (commitCache == null) {
+            File file = new File(Jenkins.get().getRootDir(), "opslevel/commit-cache.bin");
+            commitCache = new CommitCache(file, () -> OpsLevelGlobalConfiguration.get().getCommitCacheSize());
+        }
+        return commitCache;
+    }
+
+    private static boolean shouldCaptureDiagnostics(WebHookPublisher publisher) {
+        if (publisher.isCaptureDiagnostics()) {
+            return true;
+        }
+        int percent = OpsLevelGlobalConfiguration.get().getDiagnosticSamplePercent();
+        return percent > 0 && ThreadLocalRandom.current().nextInt(100) < percent;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void recoverOutbox() throws IOException {
+        // Start draining deploys journaled before the last shutdown without waiting for the next build
+        if (OpsLevelGlobalConfiguration.get().isDurableOutbox()) {
+            ExtensionList.lookupSingleton(JobListener.class).getOutbox();
+        }
+    }
+
+    @Terminator
+    public static void shutdownDelivery() throws IOException {
+        JobListener listener = ExtensionList.lookupSingleton(JobListener.class);
+        synchronized (listener) {
+            if (listener.batcher != null) {
+                // Sends whatever is still waiting for its flush window
+                listener.batcher.close();
+                listener.batcher = null;
+            }
+            if (listener.outbox != null) {
+                listener.outbox.close();
+                listener.outbox = null;
+            }
+            if (listener.retrier != null) {
+                listener.retrier.close();
+                listener.retrier = null;
+            }
+            listener.rateLimiter.close();
+            DeliveryRecordAction.flush();
+            if (listener.commitCache != null) {
+                // Warm for the next start
+                listener.commitCache.close();
+                listener.commitCache = null;
             }
-        } catch (Exception e) {
-            log.info("Invocation of webhook {} failed: {}", url, e.toString());
-            throw e;
         }
     }
 
-    private JsonObject buildDeployPayload(WebHookPublisher publisher, AbstractBuild build, TaskListener listener) throws InterruptedException, IOException {
+    public List<CircuitBreaker> getCircuitBreakers() {
+        return breakers.getBreakers();
+    }
+
+    public List<TokenBucket> getRateLimiters() {
+        return rateLimiter.getBuckets();
+    }
+
+    public int getDispatcherPending() {
+        return dispatcher.getPending();
+    }
+
+    public synchronized int getRetriesWaiting() {
+        return retrier == null ? 0 : retrier.getWaiting();
+    }
+
+    public synchronized int getOutboxPending() {
+        return outbox == null ? 0 : outbox.getUnacknowledged();
+    }
+
+    public int getRateLimited() {
+        int queued = 0;
+        for (TokenBucket bucket : rateLimiter.getBuckets()) {
+            queued += bucket.getQueued();
+        }
+        return queued;
+    }
+
+    // Null until the first deploy looked up a commit
+    public synchronized CommitCache getCommitCacheIfLoaded() {
+        return commitCache;
+    }
+
+    static List<WebHookPublisher> GetWebHookPublishers(AbstractBuild build) {
+        return PublisherIndex.get().lookup(build.getProject());
+    }
+
+    /**
+     * Resolves what every target of a build shares, once: the variables all templates need, the
+     * commit and the commits shipped.
+     */
+    private DeployContext resolveContext(List<WebHookPublisher> publishers, AbstractBuild build, TaskListener listener)
+            throws InterruptedException, IOException {
+        Set<String> required = new HashSet<>();
+        boolean captureDiagnostics = false;
+        for (WebHookPublisher publisher : publishers) {
+            required.addAll(publisher.getTemplateVariables());
+            captureDiagnostics |= shouldCaptureDiagnostics(publisher);
+        }
+
+        // Only what the templates and the payload read, the full environment is the fallback
+        long envStart = System.nanoTime();
+        EnvVars env = EnvironmentResolver.resolve(build, listener, required);
+        long envNanos = System.nanoTime() - envStart;
+        DeliveryMetrics.get().getEnvironment().record(envNanos);
+
+        if (captureDiagnostics) {
+            try {
+                getDiagnostics().capture(build.getFullDisplayName(), envNanos, env, build.getSensitiveBuildVariables());
+            } catch (IOException e) {
+                log.warn("Could not write OpsLevel diagnostics for {}: {}", build, e.toString());
+            }
+        }
+
+        return newContext(build, build.getWorkspace(), env, envNanos);
+    }
+
+    /**
+     * @param envNanos how long resolving {@code env} took, -1 if it was handed to the plugin
+     */
+    private DeployContext newContext(Run<?, ?> build, FilePath workspace, EnvVars env, long envNanos)
+            throws InterruptedException {
+        // Details of the commit, if available. Timed even when cached, it is what the deploy waited for
+        long gitStart = System.nanoTime();
+        DeployPayload.Commit commit = buildCommit(build, workspace, env);
+        long gitNanos = System.nanoTime() - gitStart;
+
+        // Everything shipped since the last deploy, from the change sets Jenkins already parsed
+        ShippedCommits shipped = ShippedCommits.collect(build, OpsLevelGlobalConfiguration.get().getMaxShippedCommits());
+
+        return new DeployContext(env, commit, shipped, envNanos, gitNanos);
+    }
+
+    private static final class DeployContext {
+        final EnvVars env;
+        final DeployPayload.Commit commit;
+        final ShippedCommits shipped;
+        // For the build's DeliveryRecordAction
+        final long envNanos;
+        final long gitNanos;
+
+        DeployContext(EnvVars env, DeployPayload.Commit commit, ShippedCommits shipped, long envNanos, long gitNanos) {
+            this.env = env;
+            this.commit = commit;
+            this.shipped = shipped;
+            this.envNanos = envNanos;
+            this.gitNanos = gitNanos;
+        }
+    }
+
+    private DeployPayload buildDeployPayload(WebHookPublisher publisher, Run<?, ?> build, DeployContext context) {
         // Leaving a sample payload here for visibility while developing.
         // {
         //     "dedup_id": "9ae54794-dfc5-4ac8-b1b5-78789f20f3f8",
@@ -153,14 +520,13 @@ public class JobListener extends RunListener<AbstractBuild> {
         //       "author_name": "Michael Scott",
         //       "author_email": "mscott@example.com",
         //       "authoring_date": "'"$(date -u '+%FT%TZ')"'"
-        //     }
-
-        EnvVars env = build.getEnvironment(listener);
+        //     },
+        //     "commits": [                                           // oldest first, capped
+        //       { "sha": "...", "message": "...", "author_name": "...", "date": "..." }
+        //     ],
+        //     "commits_truncated": true                              // only when capped
 
-        // TODO: remove debugging: Printing env variables
-        for (String key : env.keySet()) {
-            log.info(key + ": " + env.get(key));
-        }
+        EnvVars env = context.env;
 
         // Default to UUID. Perhaps allow this to be set with envVars ${JOB_NAME}_${BUILD_ID} / ${BUILD_TAG}
         String dedupId = UUID.randomUUID().toString();
@@ -169,7 +535,7 @@ public class JobListener extends RunListener<AbstractBuild> {
         String deployNumber = env.get("BUILD_NUMBER");
 
         // URL of the asset that was just deployed
-        String deployUrl = stringSub(publisher.deployUrl, env);
+        String deployUrl = expand(publisher.getDeployUrlTemplate(), env, build);
         if (deployUrl == null) {
             deployUrl = getDeployUrl(build);
         }
@@ -179,59 +545,52 @@ public class JobListener extends RunListener<AbstractBuild> {
         String deployedAt = ZonedDateTime.now().format(dtf);
 
         // Typically Test/Staging/Production
-        String environment = stringSub(publisher.environment, env);
+        String environment = expand(publisher.getEnvironmentTemplate(), env, build);
         if (environment == null) {
             environment = "Production";
         }
 
         // Conform to kubernetes conventions with this prefix
         String service = "jenkins:" + env.get("JOB_NAME");
-        if(publisher.serviceAlias != null) {
-            service = stringSub(publisher.serviceAlias, env);
+        if(publisher.getServiceAliasTemplate() != null) {
+            service = expand(publisher.getServiceAliasTemplate(), env, build);
         }
 
         // Details of who deployed, if available
-        JsonObject deployerJson = buildDeployerJson(publisher, env);
+        DeployPayload.Deployer deployer = buildDeployer(publisher, build, env);
 
-        // Details of the commit, if available
-        JsonObject commitJson = buildCommitJson(env);
+        // Shared by every target of the build
+        DeployPayload.Commit commit = context.commit;
+        ShippedCommits shipped = context.shipped;
 
         // Description that is hopefully meaningful
-        String description = stringSub(publisher.description, env);
+        String description = expand(publisher.getDescriptionTemplate(), env, build);
         if (description == null) {
-            if (commitJson != null && commitJson.containsKey("message")) {
-                description = commitJson.getString("message");
+            if (commit != null && commit.message != null) {
+                description = commit.message;
             } else {
-                description = stringSub("Jenkins Deploy #${BUILD_NUMBER}", env);
+                description = expand(DEFAULT_DESCRIPTION, env, build);
             }
         }
 
-        JsonObjectBuilder payload = Json.createObjectBuilder();
-        payload.add("dedup_id", dedupId);
-        payload.add("deploy_number", deployNumber);
-        payload.add("deploy_url", deployUrl);
-        payload.add("deployed_at", deployedAt);
-        payload.add("description", description);
-        payload.add("environment", environment);
-        payload.add("service", service);
+        // Serialized later, straight into the request
+        return new DeployPayload(dedupId, deployNumber, deployUrl, deployedAt, description, environment, service,
+            deployer, commit, shipped);
+    }
 
-        if (deployerJson != null) {
-            payload.add("deployer", deployerJson);
+    private static String expand(Template template, EnvVars env, Run<?, ?> build) {
+        if (template == null) {
+            return null;
         }
-
-        if (commitJson != null) {
-            payload.add("commit", commitJson);
+        Object jfr = FlightEvents.begin(FlightEvents.TEMPLATE);
+        String expanded = template.expand(env);
+        if (jfr != null) {
+            FlightEvents.commit(jfr, build.getParent().getFullName(), build.getNumber(), Utf8.size(expanded));
         }
-
-        return payload.build();
-    }
-
-    private String stringSub(String templateString, EnvVars env) {
-        StringSubstitutor sub = new StringSubstitutor(env);
-        return sub.replace(templateString);
+        return expanded;
     }
 
-    private String getDeployUrl(AbstractBuild build) {
+    private String getDeployUrl(Run<?, ?> build) {
         try {
             // Full URL, if Jenkins Location is set (on /configure page)
             // By default the UI shows http://localhost:8080/jenkins/
@@ -244,95 +603,83 @@ public class JobListener extends RunListener<AbstractBuild> {
         }
     }
 
-    private JsonObject buildDeployerJson(WebHookPublisher publisher, EnvVars env) {
+    private DeployPayload.Deployer buildDeployer(WebHookPublisher publisher, Run<?, ?> build, EnvVars env) {
         // TODO: how to access the user who triggered this build?
-        String deployerId = publisher.deployerId;
-        String deployerName = publisher.deployerName;
-        String deployerEmail = publisher.deployerEmail;
+        Template deployerId = publisher.getDeployerIdTemplate();
+        Template deployerName = publisher.getDeployerNameTemplate();
+        Template deployerEmail = publisher.getDeployerEmailTemplate();
 
         if (deployerId == null && deployerName == null && deployerEmail == null) {
             return null;
         }
 
-        JsonObjectBuilder deployer = Json.createObjectBuilder();
-
-        if (deployerId != null) {
-            deployer.add("id", stringSub(deployerId, env));
-        }
-
-        if (deployerName != null) {
-            deployer.add("name", stringSub(deployerName, env));
-        }
-
-        if (deployerEmail != null) {
-            deployer.add("email", stringSub(deployerEmail, env));
-        }
-
-        return deployer.build();
+        return new DeployPayload.Deployer(expand(deployerId, env, build), expand(deployerName, env, build),
+            expand(deployerEmail, env, build));
     }
 
-    private JsonObject buildCommitJson(EnvVars env) {
+    private DeployPayload.Commit buildCommit(Run<?, ?> build, FilePath workspace, EnvVars env) throws InterruptedException {
         String commitHash = env.get("GIT_COMMIT");
-        if (commitHash == null) {
-            // This build doesn't use git
-            return null;
-        }
-        JsonObjectBuilder commitJson = Json.createObjectBuilder();
-        commitJson.add("sha", commitHash);
-
         String commitBranch = env.get("GIT_BRANCH");
-        if (commitBranch != null) {
-            commitJson.add("branch", commitBranch);
+        CheckoutCommitAction checkout;
+        if (commitHash == null) {
+            // A Pipeline checkout step does not export GIT_COMMIT, use what it last checked out
+            checkout = CheckoutCommitAction.last(build);
+            if (checkout == null) {
+                // This build doesn't use git
+                return null;
+            }
+            commitHash = checkout.sha;
+        } else {
+            checkout = CheckoutCommitAction.find(build, commitHash);
         }
-
-        String commitMessage = getGitCommitMessage(env);
-        if (commitMessage != null) {
-            commitJson.add("message", commitMessage);
+        if (checkout != null) {
+            if (commitBranch == null) {
+                commitBranch = checkout.branch;
+            }
+            if (checkout.record != null) {
+                // Read while the checkout was fresh, the workspace is not touched again
+                return new DeployPayload.Commit(commitHash, commitBranch, checkout.record.subject, checkout.record);
+            }
         }
-
-        return commitJson.build();
+        CommitRecord record = lookupCommit(build, workspace, commitHash);
+        return new DeployPayload.Commit(commitHash, commitBranch, record != null ? record.subject : null, record);
     }
 
-    private String getGitCommitMessage(EnvVars env) {
-        String output = execCmd(env, "git", "show", "--pretty=%s");
-        String[] result = output.split(System.lineSeparator(), 2);
-        return result[0];
+    /**
+     * @return the commit from the cache, or else read from the workspace, null if neither has it
+     */
+    CommitRecord lookupCommit(Run<?, ?> build, FilePath workspace, String sha) throws InterruptedException {
+        CommitRecord record = getCommitCache().get(sha);
+        if (record == null && workspace != null) {
+            Object jfr = FlightEvents.begin(FlightEvents.GIT);
+            long start = System.nanoTime();
+            record = readCommit(workspace, sha);
+            DeliveryMetrics.get().getGitLookup().record(System.nanoTime() - start);
+            if (jfr != null) {
+                FlightEvents.commit(jfr, build.getParent().getFullName(), build.getNumber(), recordSize(record));
+            }
+            if (record != null) {
+                getCommitCache().put(record);
+            }
+        }
+        return record;
     }
 
-    private static String execCmd(EnvVars env, String... cmd) {
-        ProcessBuilder pb = new ProcessBuilder(cmd);
-        pb.directory(new File(env.get("WORKSPACE")));
-        Process p = null;
-        try {
-            p = pb.start();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
-        int exitCode = 0;
-        try {
-            exitCode = p.waitFor();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            return null;
-        }
-        if (exitCode != 0) {
-            String stderr = null;
-            try {
-                stderr = IOUtils.toString(p.getErrorStream(), Charset.defaultCharset());
-            } catch (IOException e) {
-                e.printStackTrace();
-                return null;
-            }
-            String strCmd = String.join(" ", cmd);
-            log.warn("Failed to execute command: {}. Exit code: {}. Stderr:: {}", strCmd, exitCode, stderr);
+    // Roughly what git printed for the record
+    private static long recordSize(CommitRecord record) {
+        if (record == null) {
+            return 0;
         }
+        return record.sha.length() + Utf8.size(record.subject) + Utf8.size(record.authorName)
+            + Utf8.size(record.authorEmail) + Utf8.size(record.committerName) + Utf8.size(record.committerEmail) + 20;
+    }
 
+    private static CommitRecord readCommit(FilePath workspace, String sha) throws InterruptedException {
         try {
-            String stdout = IOUtils.toString(p.getInputStream(), Charset.defaultCharset());
-            return stdout;
+            // Runs where the workspace is, only the commit record travels back
+            return workspace.act(new CommitReaderCallable(sha, GIT_TIMEOUT_MILLIS, GIT_MAX_OUTPUT_BYTES));
         } catch (IOException e) {
-            e.printStackTrace();
+            log.warn("Could not read commit {} in {}: {}", sha, workspace.getRemote(), e.toString());
             return null;
         }
     }
@@ -0,0 +1,47 @@
+package io.jenkins.plugins;
+
+import okio.Buffer;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON document that writes itself into an OkHttp sink.
+ *
+ * Request bodies, batches and outbox records are all streamed from this, so a deploy is never
+ * held as a String or a {@code javax.json} tree on its way to OpsLevel.
+ */
+public interface JsonPayload {
+
+    /**
+     * Writes the document as UTF-8. May be called more than once, e.g. when a delivery is retried.
+     */
+    void writeTo(BufferedSink sink) throws IOException;
+
+    /**
+     * Serializes the whole document. Meant for debug logging and tests, not the delivery path.
+     */
+    default String toJson() {
+        Buffer buffer = new Buffer();
+        try {
+            writeTo(buffer);
+        } catch (IOException e) {
+            // A Buffer does not do I/O
+            throw new UncheckedIOException(e);
+        }
+        return buffer.readUtf8();
+    }
+
+    /**
+     * Wraps an already serialized document, e.g. one read back from the outbox.
+     */
+    static JsonPayload of(byte[] utf8) {
+        return sink -> sink.write(utf8);
+    }
+
+    static JsonPayload of(String json) {
+        return of(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
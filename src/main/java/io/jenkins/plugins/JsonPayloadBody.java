@@ -0,0 +1,38 @@
+package io.jenkins.plugins;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+
+/**
+ * Request body that streams a {@link JsonPayload} into the connection as OkHttp writes the request.
+ *
+ * The length is not known up front, so the body goes out chunked.
+ */
+public class JsonPayloadBody extends RequestBody {
+
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+
+    private final JsonPayload payload;
+
+    public JsonPayloadBody(JsonPayload payload) {
+        this.payload = payload;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON_MEDIA_TYPE;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        long start = System.nanoTime();
+        try {
+            payload.writeTo(sink);
+        } finally {
+            DeliveryMetrics.get().getSerialization().record(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package io.jenkins.plugins;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@code opslevelDeploy}, publishes a deploy from a Pipeline with the same fields as the post-build action:
+ *
+ * <pre>
+ * opslevelDeploy webHookUrl: 'https://app.opslevel.com/integrations/deploy/...', environment: 'staging', wait: false
+ * </pre>
+ *
+ * The step runs off the CPS thread, so deploys from {@code parallel} branches go out side by side.
+ * With {@code wait: false} the deploy is queued for background delivery and the step returns right away.
+ * The step returns what happened to the deploy, e.g. {@code "delivered, HTTP 200"} or {@code "queued"}.
+ */
+public class OpsLevelDeployStep extends Step {
+
+    private final String webHookUrl;
+    private String serviceAlias;
+    private String environment;
+    private String description;
+    private String deployUrl;
+    private String deployerId;
+    private String deployerEmail;
+    private String deployerName;
+    private boolean wait = true;
+
+    @DataBoundConstructor
+    public OpsLevelDeployStep(String webHookUrl) {
+        this.webHookUrl = webHookUrl;
+    }
+
+    public String getWebHookUrl() {
+        return webHookUrl;
+    }
+
+    public String getServiceAlias() {
+        return serviceAlias;
+    }
+
+    @DataBoundSetter
+    public void setServiceAlias(String serviceAlias) {
+        this.serviceAlias = serviceAlias;
+    }
+
+    public String getEnvironment() {
+        return environment;
+    }
+
+    @DataBoundSetter
+    public void setEnvironment(String environment) {
+        this.environment = environment;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @DataBoundSetter
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getDeployUrl() {
+        return deployUrl;
+    }
+
+    @DataBoundSetter
+    public void setDeployUrl(String deployUrl) {
+        this.deployUrl = deployUrl;
+    }
+
+    public String getDeployerId() {
+        return deployerId;
+    }
+
+    @DataBoundSetter
+    public void setDeployerId(String deployerId) {
+        this.deployerId = deployerId;
+    }
+
+    public String getDeployerEmail() {
+        return deployerEmail;
+    }
+
+    @DataBoundSetter
+    public void setDeployerEmail(String deployerEmail) {
+        this.deployerEmail = deployerEmail;
+    }
+
+    public String getDeployerName() {
+        return deployerName;
+    }
+
+    @DataBoundSetter
+    public void setDeployerName(String deployerName) {
+        this.deployerName = deployerName;
+    }
+
+    public boolean isWait() {
+        return wait;
+    }
+
+    @DataBoundSetter
+    public void setWait(boolean wait) {
+        this.wait = wait;
+    }
+
+    // Compiles the templates the same way the post-build action does
+    WebHookPublisher toPublisher() {
+        return new WebHookPublisher(webHookUrl, serviceAlias, environment, description, deployUrl, deployerId,
+            deployerEmail, deployerName);
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new Execution(this, context);
+    }
+
+    private static class Execution extends SynchronousNonBlockingStepExecution<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        // Not kept across a restart: like any SynchronousNonBlockingStepExecution, a Pipeline resumed
+        // while the step was running fails it rather than risk publishing the deploy twice
+        private final transient OpsLevelDeployStep step;
+
+        Execution(OpsLevelDeployStep step, StepContext context) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        protected String run() throws Exception {
+            StepContext context = getContext();
+            Run<?, ?> run = context.get(Run.class);
+            TaskListener listener = context.get(TaskListener.class);
+            EnvVars env = context.get(EnvVars.class);
+            // Only inside a node block, without one the commit comes from the cache or not at all
+            FilePath workspace = context.get(FilePath.class);
+            return ExtensionList.lookupSingleton(JobListener.class)
+                .publishFromStep(step.toPublisher(), run, workspace, env, listener, step.isWait());
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(Run.class, TaskListener.class, EnvVars.class)));
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "opslevelDeploy";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Publish a deploy to OpsLevel";
+        }
+
+        @Override
+        public String getHelpFile(String fieldName) {
+            // Every field but wait is documented on the post-build action
+            String help = super.getHelpFile(fieldName);
+            if (help == null) {
+                help = Jenkins.get().getDescriptorByType(WebHookPublisher.WebHookPublisherDescriptor.class)
+                    .getHelpFile(fieldName);
+            }
+            return help;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package io.jenkins.plugins;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import jenkins.model.GlobalConfiguration;
+import net.sf.json.JSONObject;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.concurrent.TimeUnit;
+
+@Extension
+public class OpsLevelGlobalConfiguration extends GlobalConfiguration {
+
+    private boolean asyncDelivery;
+    private boolean publishOnFinalized;
+    private int dispatcherQueueCapacity = 1000;
+    private boolean durableOutbox;
+    private boolean batchDelivery;
+    private int batchMaxEvents = 50;
+    private long batchWindowMillis = 500;
+    private long retryBaseDelayMillis = 1000;
+    private long retryMaxDelayMillis = 60000;
+    private long retryDeadlineSeconds = 600;
+    private int breakerFailureRateThreshold = 50;
+    private int breakerSlowCallRateThreshold = 100;
+    private long breakerSlowCallDurationMillis = 10000;
+    private int breakerWindowSize = 20;
+    private int breakerMinimumCalls = 10;
+    private long breakerOpenSeconds = 60;
+    private int breakerHalfOpenCalls = 3;
+    private double rateLimitPerSecond;
+    private int rateLimitBurst = 20;
+    // HTTP client settings, the defaults are OkHttp's own
+    private int httpMaxIdleConnections = 5;
+    private long httpKeepAliveSeconds = 300;
+    private long httpConnectTimeoutMillis = 10000;
+    private long httpReadTimeoutMillis = 10000;
+    private long httpWriteTimeoutMillis = 10000;
+    private long httpCallTimeoutMillis = 0;
+    private int httpMaxRequests = 64;
+    private int httpMaxRequestsPerHost = 5;
+
+    private int diagnosticSamplePercent;
+    private int commitCacheSize = 1000;
+    private int maxShippedCommits = 100;
+    private boolean prometheusAnonymousRead;
+
+    private transient volatile OkHttpClient httpClient;
+    // True while a form submission is bound, guarded by this
+    private transient boolean configuring;
+
+    public OpsLevelGlobalConfiguration() {
+        load();
+    }
+
+    public static OpsLevelGlobalConfiguration get() {
+        return ExtensionList.lookupSingleton(OpsLevelGlobalConfiguration.class);
+    }
+
+    /**
+     * Applies a submitted form as one change: the HTTP client is rebuilt and the settings written
+     * once, after every setter ran. Until then deliveries keep the client they had.
+     */
+    @Override
+    public synchronized boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        configuring = true;
+        try {
+            req.bindJSON(this, json);
+        } finally {
+            configuring = false;
+        }
+        httpSettingsChanged();
+        save();
+        return true;
+    }
+
+    @Override
+    public synchronized void save() {
+        // Written once by configure
+        if (!configuring) {
+            super.save();
+        }
+    }
+
+    public boolean isAsyncDelivery() {
+        return asyncDelivery;
+    }
+
+    @DataBoundSetter
+    public void setAsyncDelivery(boolean asyncDelivery) {
+        this.asyncDelivery = asyncDelivery;
+        save();
+    }
+
+    public boolean isPublishOnFinalized() {
+        return publishOnFinalized;
+    }
+
+    @DataBoundSetter
+    public void setPublishOnFinalized(boolean publishOnFinalized) {
+        this.publishOnFinalized = publishOnFinalized;
+        save();
+    }
+
+    public int getDispatcherQueueCapacity() {
+        return dispatcherQueueCapacity;
+    }
+
+    @DataBoundSetter
+    public void setDispatcherQueueCapacity(int dispatcherQueueCapacity) {
+        // A capacity of zero would silently turn async delivery back into synchronous delivery
+        this.dispatcherQueueCapacity = Math.max(1, dispatcherQueueCapacity);
+        save();
+    }
+
+    public boolean isDurableOutbox() {
+        return durableOutbox;
+    }
+
+    @DataBoundSetter
+    public void setDurableOutbox(boolean durableOutbox) {
+        this.durableOutbox = durableOutbox;
+        save();
+    }
+
+    public boolean isBatchDelivery() {
+        return batchDelivery;
+    }
+
+    @DataBoundSetter
+    public void setBatchDelivery(boolean batchDelivery) {
+        this.batchDelivery = batchDelivery;
+        save();
+    }
+
+    public int getBatchMaxEvents() {
+        return batchMaxEvents;
+    }
+
+    @DataBoundSetter
+    public void setBatchMaxEvents(int batchMaxEvents) {
+        this.batchMaxEvents = Math.max(1, batchMaxEvents);
+        save();
+    }
+
+    public long getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    @DataBoundSetter
+    public void setBatchWindowMillis(long batchWindowMillis) {
+        this.batchWindowMillis = Math.max(0, batchWindowMillis);
+        save();
+    }
+
+    public long getRetryBaseDelayMillis() {
+        return retryBaseDelayMillis;
+    }
+
+    @DataBoundSetter
+    public void setRetryBaseDelayMillis(long retryBaseDelayMillis) {
+        this.retryBaseDelayMillis = Math.max(1, retryBaseDelayMillis);
+        save();
+    }
+
+    public long getRetryMaxDelayMillis() {
+        return retryMaxDelayMillis;
+    }
+
+    @DataBoundSetter
+    public void setRetryMaxDelayMillis(long retryMaxDelayMillis) {
+        this.retryMaxDelayMillis = Math.max(1, retryMaxDelayMillis);
+        save();
+    }
+
+    public long getRetryDeadlineSeconds() {
+        return retryDeadlineSeconds;
+    }
+
+    @DataBoundSetter
+    public void setRetryDeadlineSeconds(long retryDeadlineSeconds) {
+        // Zero turns retries off
+        this.retryDeadlineSeconds = Math.max(0, retryDeadlineSeconds);
+        save();
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return new RetryPolicy(retryBaseDelayMillis, retryMaxDelayMillis, retryDeadlineSeconds * 1000);
+    }
+
+    public int getBreakerFailureRateThreshold() {
+        return breakerFailureRateThreshold;
+    }
+
+    @DataBoundSetter
+    public void setBreakerFailureRateThreshold(int breakerFailureRateThreshold) {
+        this.breakerFailureRateThreshold = Math.max(1, Math.min(100, breakerFailureRateThreshold));
+        save();
+    }
+
+    public int getBreakerSlowCallRateThreshold() {
+        return breakerSlowCallRateThreshold;
+    }
+
+    @DataBoundSetter
+    public void setBreakerSlowCallRateThreshold(int breakerSlowCallRateThreshold) {
+        this.breakerSlowCallRateThreshold = Math.max(1, Math.min(100, breakerSlowCallRateThreshold));
+        save();
+    }
+
+    public long getBreakerSlowCallDurationMillis() {
+        return breakerSlowCallDurationMillis;
+    }
+
+    @DataBoundSetter
+    public void setBreakerSlowCallDurationMillis(long breakerSlowCallDurationMillis) {
+        this.breakerSlowCallDurationMillis = Math.max(1, breakerSlowCallDurationMillis);
+        save();
+    }
+
+    public int getBreakerWindowSize() {
+        return breakerWindowSize;
+    }
+
+    @DataBoundSetter
+    public void setBreakerWindowSize(int breakerWindowSize) {
+        this.breakerWindowSize = Math.max(1, breakerWindowSize);
+        save();
+    }
+
+    public int getBreakerMinimumCalls() {
+        return breakerMinimumCalls;
+    }
+
+    @DataBoundSetter
+    public void setBreakerMinimumCalls(int breakerMinimumCalls) {
+        this.breakerMinimumCalls = Math.max(1, breakerMinimumCalls);
+        save();
+    }
+
+    public long getBreakerOpenSeconds() {
+        return breakerOpenSeconds;
+    }
+
+    @DataBoundSetter
+    public void setBreakerOpenSeconds(long breakerOpenSeconds) {
+        this.breakerOpenSeconds = Math.max(1, breakerOpenSeconds);
+        save();
+    }
+
+    public int getBreakerHalfOpenCalls() {
+        return breakerHalfOpenCalls;
+    }
+
+    @DataBoundSetter
+    public void setBreakerHalfOpenCalls(int breakerHalfOpenCalls) {
+        this.breakerHalfOpenCalls = Math.max(1, breakerHalfOpenCalls);
+        save();
+    }
+
+    public CircuitBreaker.Settings getCircuitBreakerSettings() {
+        return new CircuitBreaker.Settings(breakerFailureRateThreshold, breakerSlowCallRateThreshold,
+            breakerSlowCallDurationMillis, breakerWindowSize, breakerMinimumCalls, breakerOpenSeconds * 1000,
+            breakerHalfOpenCalls);
+    }
+
+    public double getRateLimitPerSecond() {
+        return rateLimitPerSecond;
+    }
+
+    @DataBoundSetter
+    public void setRateLimitPerSecond(double rateLimitPerSecond) {
+        // Zero or less turns rate limiting off
+        this.rateLimitPerSecond = Math.max(0, rateLimitPerSecond);
+        save();
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    @DataBoundSetter
+    public void setRateLimitBurst(int rateLimitBurst) {
+        this.rateLimitBurst = Math.max(1, rateLimitBurst);
+        save();
+    }
+
+    public int getHttpMaxIdleConnections() {
+        return httpMaxIdleConnections;
+    }
+
+    @DataBoundSetter
+    public void setHttpMaxIdleConnections(int httpMaxIdleConnections) {
+        this.httpMaxIdleConnections = Math.max(0, httpMaxIdleConnections);
+        httpSettingChanged();
+    }
+
+    public long getHttpKeepAliveSeconds() {
+        return httpKeepAliveSeconds;
+    }
+
+    @DataBoundSetter
+    public void setHttpKeepAliveSeconds(long httpKeepAliveSeconds) {
+        this.httpKeepAliveSeconds = Math.max(1, httpKeepAliveSeconds);
+        httpSettingChanged();
+    }
+
+    public long getHttpConnectTimeoutMillis() {
+        return httpConnectTimeoutMillis;
+    }
+
+    @DataBoundSetter
+    public void setHttpConnectTimeoutMillis(long httpConnectTimeoutMillis) {
+        this.httpConnectTimeoutMillis = Math.max(0, httpConnectTimeoutMillis);
+        httpSettingChanged();
+    }
+
+    public long getHttpReadTimeoutMillis() {
+        return httpReadTimeoutMillis;
+    }
+
+    @DataBoundSetter
+    public void setHttpReadTimeoutMillis(long httpReadTimeoutMillis) {
+        this.httpReadTimeoutMillis = Math.max(0, httpReadTimeoutMillis);
+        httpSettingChanged();
+    }
+
+    public long getHttpWriteTimeoutMillis() {
+        return httpWriteTimeoutMillis;
+    }
+
+    @DataBoundSetter
+    public void setHttpWriteTimeoutMillis(long httpWriteTimeoutMillis) {
+        this.httpWriteTimeoutMillis = Math.max(0, httpWriteTimeoutMillis);
+        httpSettingChanged();
+    }
+
+    public long getHttpCallTimeoutMillis() {
+        return httpCallTimeoutMillis;
+    }
+
+    @DataBoundSetter
+    public void setHttpCallTimeoutMillis(long httpCallTimeoutMillis) {
+        this.httpCallTimeoutMillis = Math.max(0, httpCallTimeoutMillis);
+        httpSettingChanged();
+    }
+
+    public int getHttpMaxRequests() {
+        return httpMaxRequests;
+    }
+
+    @DataBoundSetter
+    public void setHttpMaxRequests(int httpMaxRequests) {
+        this.httpMaxRequests = Math.max(1, httpMaxRequests);
+        httpSettingChanged();
+    }
+
+    public int getHttpMaxRequestsPerHost() {
+        return httpMaxRequestsPerHost;
+    }
+
+    @DataBoundSetter
+    public void setHttpMaxRequestsPerHost(int httpMaxRequestsPerHost) {
+        this.httpMaxRequestsPerHost = Math.max(1, httpMaxRequestsPerHost);
+        httpSettingChanged();
+    }
+
+    public int getDiagnosticSamplePercent() {
+        return diagnosticSamplePercent;
+    }
+
+    @DataBoundSetter
+    public void setDiagnosticSamplePercent(int diagnosticSamplePercent) {
+        this.diagnosticSamplePercent = Math.min(100, Math.max(0, diagnosticSamplePercent));
+        save();
+    }
+
+    public int getCommitCacheSize() {
+        return commitCacheSize;
+    }
+
+    @DataBoundSetter
+    public void setCommitCacheSize(int commitCacheSize) {
+        this.commitCacheSize = Math.max(0, commitCacheSize);
+        save();
+    }
+
+    public int getMaxShippedCommits() {
+        return maxShippedCommits;
+    }
+
+    @DataBoundSetter
+    public void setMaxShippedCommits(int maxShippedCommits) {
+        this.maxShippedCommits = Math.max(0, maxShippedCommits);
+        save();
+    }
+
+    public boolean isPrometheusAnonymousRead() {
+        return prometheusAnonymousRead;
+    }
+
+    @DataBoundSetter
+    public void setPrometheusAnonymousRead(boolean prometheusAnonymousRead) {
+        this.prometheusAnonymousRead = prometheusAnonymousRead;
+        save();
+    }
+
+    /**
+     * The client shared by every deploy delivery. It is rebuilt on first use after an HTTP setting changed;
+     * calls already running keep the client, connection pool and dispatcher they started on, and the old
+     * dispatcher's threads stop once they are done.
+     */
+    public OkHttpClient getHttpClient() {
+        OkHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = httpClient;
+                if (client == null) {
+                    client = buildHttpClient();
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    // One HTTP setting changed on its own, outside a form submission
+    private synchronized void httpSettingChanged() {
+        if (!configuring) {
+            httpSettingsChanged();
+            save();
+        }
+    }
+
+    private synchronized void httpSettingsChanged() {
+        OkHttpClient retired = httpClient;
+        httpClient = null;
+        if (retired != null) {
+            // Only idle connections are closed, in-flight calls finish on the old pool
+            retired.connectionPool().evictAll();
+            retire(retired.dispatcher());
+        }
+    }
+
+    /**
+     * Stops the threads of a client's dispatcher once the calls it is running have finished.
+     */
+    static void retire(Dispatcher dispatcher) {
+        dispatcher.setIdleCallback(() -> dispatcher.executorService().shutdown());
+        // The last call may have finished before the callback was set
+        if (dispatcher.runningCallsCount() == 0) {
+            dispatcher.executorService().shutdown();
+        }
+    }
+
+    private OkHttpClient buildHttpClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(httpMaxRequests);
+        dispatcher.setMaxRequestsPerHost(httpMaxRequestsPerHost);
+        return new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(httpMaxIdleConnections, httpKeepAliveSeconds, TimeUnit.SECONDS))
+            .dispatcher(dispatcher)
+            .connectTimeout(httpConnectTimeoutMillis, TimeUnit.MILLISECONDS)
+            .readTimeout(httpReadTimeoutMillis, TimeUnit.MILLISECONDS)
+            .writeTimeout(httpWriteTimeoutMillis, TimeUnit.MILLISECONDS)
+            .callTimeout(httpCallTimeoutMillis, TimeUnit.MILLISECONDS)
+            .eventListenerFactory(DeliveryEventListener.FACTORY)
+            .build();
+    }
+}
@@ -0,0 +1,59 @@
+package io.jenkins.plugins;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.ManagementLink;
+
+import java.util.List;
+
+/**
+ * Shows administrators how deploy delivery to OpsLevel is doing.
+ */
+@Extension
+public class OpsLevelManagementLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "network.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "OpsLevel";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Delivery status of deploys published to OpsLevel.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "opslevel";
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.STATUS;
+    }
+
+    public List<CircuitBreaker> getCircuitBreakers() {
+        return ExtensionList.lookupSingleton(JobListener.class).getCircuitBreakers();
+    }
+
+    public List<TokenBucket> getRateLimiters() {
+        return ExtensionList.lookupSingleton(JobListener.class).getRateLimiters();
+    }
+
+    public DeliveryMetrics getMetrics() {
+        return DeliveryMetrics.get();
+    }
+
+    public JobListener getDelivery() {
+        return ExtensionList.lookupSingleton(JobListener.class);
+    }
+
+    public CommitCache getCommitCache() {
+        return ExtensionList.lookupSingleton(JobListener.class).getCommitCacheIfLoaded();
+    }
+}
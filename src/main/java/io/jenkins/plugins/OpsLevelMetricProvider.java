@@ -0,0 +1,238 @@
+package io.jenkins.plugins;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import hudson.Extension;
+import hudson.ExtensionList;
+import jenkins.metrics.api.MetricProvider;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Publishes {@link DeliveryMetrics} to the Metrics plugin, when it is installed, under {@code opslevel.*}.
+ *
+ * Timers and counters are views of the plugin's own histograms and adders, read on demand, so
+ * reporting never adds work to recording. A timer's rates are brought up to date when they are
+ * read, so they are as fine-grained as the reporter's interval.
+ */
+@Extension(optional = true)
+public class OpsLevelMetricProvider extends MetricProvider {
+
+    private final MetricSet metrics;
+
+    public OpsLevelMetricProvider() {
+        DeliveryMetrics delivery = DeliveryMetrics.get();
+        Map<String, Metric> all = new LinkedHashMap<>();
+        for (Map.Entry<String, LatencyHistogram> timer : delivery.getTimers().entrySet()) {
+            all.put(MetricRegistry.name("opslevel", timer.getKey()), new HistogramTimer(timer.getValue()));
+        }
+        all.put("opslevel.deploys.sent", new CounterView(delivery::getSent));
+        all.put("opslevel.deploys.failed", new CounterView(delivery::getFailed));
+        all.put("opslevel.deploys.retried", new CounterView(delivery::getRetried));
+        all.put("opslevel.deploys.abandoned", new CounterView(delivery::getAbandoned));
+        all.put("opslevel.queue.inflight", (Gauge<Integer>) () -> listener().getDispatcherPending());
+        all.put("opslevel.queue.retrying", (Gauge<Integer>) () -> listener().getRetriesWaiting());
+        all.put("opslevel.queue.ratelimited", (Gauge<Integer>) () -> listener().getRateLimited());
+        all.put("opslevel.queue.outbox", (Gauge<Integer>) () -> listener().getOutboxPending());
+        Map<String, Metric> unmodifiable = Collections.unmodifiableMap(all);
+        metrics = () -> unmodifiable;
+    }
+
+    @Override
+    public MetricSet getMetricSet() {
+        return metrics;
+    }
+
+    private static JobListener listener() {
+        return ExtensionList.lookupSingleton(JobListener.class);
+    }
+
+    /**
+     * A counter kept elsewhere.
+     */
+    static final class CounterView extends Counter {
+        private final LongSupplier count;
+
+        CounterView(LongSupplier count) {
+            this.count = count;
+        }
+
+        @Override
+        public long getCount() {
+            return count.getAsLong();
+        }
+    }
+
+    /**
+     * A timer over a {@link LatencyHistogram}, in nanoseconds like any Metrics timer.
+     */
+    static final class HistogramTimer extends Timer {
+        private final LatencyHistogram histogram;
+        private final Meter rate = new Meter();
+        // Guarded by this
+        private long marked;
+
+        HistogramTimer(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public Snapshot getSnapshot() {
+            return new HistogramSnapshot(histogram);
+        }
+
+        @Override
+        public double getMeanRate() {
+            return catchUp().getMeanRate();
+        }
+
+        @Override
+        public double getOneMinuteRate() {
+            return catchUp().getOneMinuteRate();
+        }
+
+        @Override
+        public double getFiveMinuteRate() {
+            return catchUp().getFiveMinuteRate();
+        }
+
+        @Override
+        public double getFifteenMinuteRate() {
+            return catchUp().getFifteenMinuteRate();
+        }
+
+        // Marks what was recorded since the last read
+        private synchronized Meter catchUp() {
+            long count = histogram.getCount();
+            rate.mark(count - marked);
+            marked = count;
+            return rate;
+        }
+    }
+
+    /**
+     * The buckets of a {@link LatencyHistogram} at one point in time. Values are the upper bound of
+     * their bucket, like {@link LatencyHistogram#getPercentileNanos}.
+     */
+    static final class HistogramSnapshot extends Snapshot {
+        // As many as the default reservoir of a Metrics timer holds
+        private static final int MAX_VALUES = 1028;
+
+        private final long[] counts;
+        private final long count;
+        private final long max;
+        private final long sum;
+
+        HistogramSnapshot(LatencyHistogram histogram) {
+            counts = histogram.getBucketCounts();
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            count = total;
+            max = histogram.getMaxNanos();
+            sum = histogram.getSumNanos();
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return value(i);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @return evenly spaced quantiles, at most {@value #MAX_VALUES} of them
+         */
+        @Override
+        public long[] getValues() {
+            int n = (int) Math.min(count, MAX_VALUES);
+            long[] values = new long[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = (long) getValue((i + 1) / (double) n);
+            }
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(count, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public double getMean() {
+            return count == 0 ? 0 : sum / (double) count;
+        }
+
+        @Override
+        public long getMin() {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    return Math.min(LatencyHistogram.lowerBound(i), max);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (count < 2) {
+                return 0;
+            }
+            double mean = getMean();
+            double squares = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    double middle = (Math.min(LatencyHistogram.lowerBound(i), max) + value(i)) / 2.0;
+                    squares += counts[i] * (middle - mean) * (middle - mean);
+                }
+            }
+            return Math.sqrt(squares / (count - 1));
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (long value : getValues()) {
+                    out.printf("%d%n", value);
+                }
+            }
+        }
+
+        private long value(int bucket) {
+            return Math.min(LatencyHistogram.upperBound(bucket), max);
+        }
+    }
+}
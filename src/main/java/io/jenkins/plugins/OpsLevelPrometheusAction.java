@@ -0,0 +1,48 @@
+package io.jenkins.plugins;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.UnprotectedRootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Serves delivery statistics to Prometheus at {@code /opslevel-prometheus/}.
+ *
+ * Scrapers usually have no Jenkins account, so reading without one can be allowed in the global
+ * configuration. Otherwise the scrape needs Overall/Read like any other page.
+ */
+@Extension
+public class OpsLevelPrometheusAction implements UnprotectedRootAction {
+
+    @Override
+    public String getIconFileName() {
+        // Not linked from the side panel
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "OpsLevel Prometheus metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "opslevel-prometheus";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (!OpsLevelGlobalConfiguration.get().isPrometheusAnonymousRead()) {
+            Jenkins.get().checkPermission(Jenkins.READ);
+        }
+        rsp.setContentType(PrometheusFormat.CONTENT_TYPE);
+        rsp.setHeader("Cache-Control", "no-cache");
+        try (PrintWriter out = rsp.getWriter()) {
+            PrometheusFormat.write(out, DeliveryMetrics.get(), ExtensionList.lookupSingleton(JobListener.class));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link DeliveryMetrics} in the Prometheus text exposition format, version 0.0.4.
+ *
+ * Every value is read straight from the counters the delivery path already keeps, nothing is
+ * collected or copied per scrape beyond the sorted list of hosts.
+ */
+public final class PrometheusFormat {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private PrometheusFormat() {
+    }
+
+    /**
+     * @param delivery the delivery stages to read queue depths from, null to leave the gauges out
+     */
+    public static void write(Writer out, DeliveryMetrics metrics, JobListener delivery) throws IOException {
+        // Stable output, scrapes of the same state are identical
+        List<EndpointStats> endpoints = new ArrayList<>(metrics.getEndpoints());
+        endpoints.sort(Comparator.comparing(endpoint -> endpoint.host));
+
+        header(out, "opslevel_http_request_duration_seconds", "histogram",
+            "Time from starting a request to OpsLevel to the end of its response, per host.");
+        for (EndpointStats endpoint : endpoints) {
+            long cumulative = 0;
+            for (int i = 0; i < EndpointStats.BUCKET_SECONDS.length; i++) {
+                cumulative += endpoint.getBucket(i);
+                bucket(out, endpoint.host, Double.toString(EndpointStats.BUCKET_SECONDS[i]), cumulative);
+            }
+            cumulative += endpoint.getBucket(EndpointStats.BUCKET_SECONDS.length);
+            bucket(out, endpoint.host, "+Inf", cumulative);
+            sample(out, "opslevel_http_request_duration_seconds_sum", "host", endpoint.host,
+                seconds(endpoint.getLatencyNanos()));
+            sample(out, "opslevel_http_request_duration_seconds_count", "host", endpoint.host,
+                Long.toString(endpoint.getRequests()));
+        }
+
+        header(out, "opslevel_http_responses_total", "counter", "Responses from OpsLevel by host and status code.");
+        for (EndpointStats endpoint : endpoints) {
+            for (int code = 0; code <= EndpointStats.MAX_STATUS; code++) {
+                long responses = endpoint.getStatus(code);
+                if (responses > 0) {
+                    out.write("opslevel_http_responses_total{host=\"");
+                    escape(out, endpoint.host);
+                    out.write("\",code=\"");
+                    out.write(Integer.toString(code));
+                    out.write("\"} ");
+                    out.write(Long.toString(responses));
+                    out.write('\n');
+                }
+            }
+        }
+
+        header(out, "opslevel_http_failures_total", "counter", "Requests to OpsLevel that failed without a response.");
+        for (EndpointStats endpoint : endpoints) {
+            sample(out, "opslevel_http_failures_total", "host", endpoint.host, Long.toString(endpoint.getFailures()));
+        }
+
+        header(out, "opslevel_http_request_bytes_total", "counter", "Request body bytes sent to OpsLevel.");
+        for (EndpointStats endpoint : endpoints) {
+            sample(out, "opslevel_http_request_bytes_total", "host", endpoint.host, Long.toString(endpoint.getBytesSent()));
+        }
+
+        LatencyHistogram git = metrics.getGitLookup();
+        header(out, "opslevel_git_lookup_seconds", "summary", "Time to read a commit that was not cached.");
+        sample(out, "opslevel_git_lookup_seconds", "quantile", "0.5", seconds(git.getPercentileNanos(50)));
+        sample(out, "opslevel_git_lookup_seconds", "quantile", "0.99", seconds(git.getPercentileNanos(99)));
+        sample(out, "opslevel_git_lookup_seconds_sum", null, null, seconds(git.getSumNanos()));
+        sample(out, "opslevel_git_lookup_seconds_count", null, null, Long.toString(git.getCount()));
+
+        counter(out, "opslevel_deploys_sent_total", "Delivery attempts answered with a 2xx.", metrics.getSent());
+        counter(out, "opslevel_deploys_failed_total", "Delivery attempts that failed.", metrics.getFailed());
+        counter(out, "opslevel_deploys_retried_total", "Delivery attempts scheduled again after a failure.",
+            metrics.getRetried());
+        counter(out, "opslevel_deploys_abandoned_total", "Deploys given up on at their retry deadline.",
+            metrics.getAbandoned());
+
+        if (delivery != null) {
+            gauge(out, "opslevel_dispatcher_pending", "Deploys waiting in the background dispatcher.",
+                delivery.getDispatcherPending());
+            gauge(out, "opslevel_retries_waiting", "Deploys waiting for their next attempt.",
+                delivery.getRetriesWaiting());
+            gauge(out, "opslevel_outbox_pending", "Deploys recorded in the outbox and not yet acknowledged.",
+                delivery.getOutboxPending());
+            gauge(out, "opslevel_rate_limited", "Deploys queued by the rate limiter.", delivery.getRateLimited());
+        }
+    }
+
+    private static void header(Writer out, String name, String type, String help) throws IOException {
+        out.write("# HELP ");
+        out.write(name);
+        out.write(' ');
+        out.write(help);
+        out.write("\n# TYPE ");
+        out.write(name);
+        out.write(' ');
+        out.write(type);
+        out.write('\n');
+    }
+
+    private static void counter(Writer out, String name, String help, long value) throws IOException {
+        header(out, name, "counter", help);
+        sample(out, name, null, null, Long.toString(value));
+    }
+
+    private static void gauge(Writer out, String name, String help, long value) throws IOException {
+        header(out, name, "gauge", help);
+        sample(out, name, null, null, Long.toString(value));
+    }
+
+    private static void bucket(Writer out, String host, String le, long count) throws IOException {
+        out.write("opslevel_http_request_duration_seconds_bucket{host=\"");
+        escape(out, host);
+        out.write("\",le=\"");
+        out.write(le);
+        out.write("\"} ");
+        out.write(Long.toString(count));
+        out.write('\n');
+    }
+
+    private static void sample(Writer out, String name, String label, String labelValue, String value)
+        throws IOException {
+        out.write(name);
+        if (label != null) {
+            out.write('{');
+            out.write(label);
+            out.write("=\"");
+            escape(out, labelValue);
+            out.write("\"}");
+        }
+        out.write(' ');
+        out.write(value);
+        out.write('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / NANOS_PER_SECOND);
+    }
+
+    // Label values escape backslash, double quote and line feed
+    static void escape(Writer out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                out.write("\\\\");
+            } else if (c == '"') {
+                out.write("\\\"");
+            } else if (c == '\n') {
+                out.write("\\n");
+            } else {
+                out.write(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package io.jenkins.plugins;
+
+import hudson.model.InvisibleAction;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the plugin held a build: the time spent in the {@link JobListener} callback that
+ * published its deploy, including waiting for OpsLevel when delivery is not in the background.
+ */
+public class PublishLatencyAction extends InvisibleAction {
+
+    public static final String COMPLETED = "onCompleted";
+    public static final String FINALIZED = "onFinalized";
+
+    // Which callback published, time spent in onCompleted counts towards the build's duration
+    public final String phase;
+    public final long heldNanos;
+
+    public PublishLatencyAction(String phase, long heldNanos) {
+        this.phase = phase;
+        this.heldNanos = heldNanos;
+    }
+
+    public double getHeldMillis() {
+        return heldNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public boolean isInBuildDuration() {
+        return COMPLETED.equals(phase);
+    }
+}
@@ -0,0 +1,100 @@
+package io.jenkins.plugins;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link WebHookPublisher}s of each project, so a completed build of a job that does not publish
+ * to OpsLevel costs one map lookup instead of a scan of its publishers.
+ *
+ * A project is looked up on its first build and stays indexed, with the shared empty list if it has
+ * no publisher, until its configuration changes. Projects are keyed by identity, a rename keeps the object.
+ */
+@Extension
+public class PublisherIndex extends ItemListener {
+
+    private final ConcurrentHashMap<AbstractProject<?, ?>, List<WebHookPublisher>> publishers =
+        new ConcurrentHashMap<>();
+
+    public static PublisherIndex get() {
+        return ExtensionList.lookupSingleton(PublisherIndex.class);
+    }
+
+    /**
+     * @return the project's publishers in the order they are configured, empty if it has none
+     */
+    public List<WebHookPublisher> lookup(AbstractProject<?, ?> project) {
+        List<WebHookPublisher> found = publishers.get(project);
+        if (found == null) {
+            found = publishers.computeIfAbsent(project, PublisherIndex::find);
+        }
+        return found;
+    }
+
+    private static List<WebHookPublisher> find(AbstractProject<?, ?> project) {
+        List<WebHookPublisher> found = project.getPublishersList().getAll(WebHookPublisher.class);
+        return found.isEmpty() ? Collections.<WebHookPublisher>emptyList() : Collections.unmodifiableList(found);
+    }
+
+    int size() {
+        return publishers.size();
+    }
+
+    void invalidate(Item item) {
+        if (item instanceof AbstractProject) {
+            publishers.remove(item);
+        } else {
+            // A folder, whatever it held may have moved or gone with it
+            publishers.clear();
+        }
+    }
+
+    @Override
+    public void onCreated(Item item) {
+        invalidate(item);
+    }
+
+    @Override
+    public void onUpdated(Item item) {
+        invalidate(item);
+    }
+
+    @Override
+    public void onDeleted(Item item) {
+        invalidate(item);
+    }
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+        invalidate(item);
+    }
+
+    @Override
+    public void onLoaded() {
+        // Reloading from disk replaces every project object
+        publishers.clear();
+    }
+
+    /**
+     * Publishers added or removed through the API rather than the configure page only save the project.
+     */
+    @Extension
+    public static class SaveListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof AbstractProject) {
+                PublisherIndex.get().invalidate((AbstractProject<?, ?>) o);
+            }
+        }
+    }
+}
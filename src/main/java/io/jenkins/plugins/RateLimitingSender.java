@@ -0,0 +1,112 @@
+package io.jenkins.plugins;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+
+/**
+ * Paces deliveries to each webhook URL with a {@link TokenBucket}.
+ *
+ * Deploys over the limit wait on a timer for their token and are then passed on; nothing is
+ * dropped. A rate of zero or less turns limiting off.
+ */
+public class RateLimitingSender implements DeploySender, Closeable {
+
+    private final DeploySender downstream;
+    private final DoubleSupplier ratePerSecond;
+    private final IntSupplier burst;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    public RateLimitingSender(DeploySender downstream, DoubleSupplier ratePerSecond, IntSupplier burst) {
+        this.downstream = downstream;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "OpsLevel rate limiter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public CompletableFuture<DeliveryResult> send(DeployEvent event) {
+        double rate = ratePerSecond.getAsDouble();
+        if (rate <= 0) {
+            return downstream.send(event);
+        }
+
+        TokenBucket bucket = bucketFor(event.webHookUrl);
+        long wait = bucket.reserve(rate, burst.getAsInt());
+        if (wait == 0) {
+            bucket.onReleased(0);
+            return downstream.send(event);
+        }
+
+        bucket.onQueued();
+        long queuedAt = System.nanoTime();
+        CompletableFuture<DeliveryResult> result = new CompletableFuture<>();
+        try {
+            timer.schedule(() -> {
+                bucket.onReleased(System.nanoTime() - queuedAt);
+                forward(event, result);
+            }, wait, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, send it without waiting rather than lose it
+            bucket.onReleased(System.nanoTime() - queuedAt);
+            forward(event, result);
+        }
+        return result;
+    }
+
+    /**
+     * Takes a token for a delivery the caller makes itself, only if one is available right now.
+     */
+    public boolean tryAcquire(String webHookUrl) {
+        double rate = ratePerSecond.getAsDouble();
+        return rate <= 0 || bucketFor(webHookUrl).tryAcquire(rate, burst.getAsInt());
+    }
+
+    public List<TokenBucket> getBuckets() {
+        return new ArrayList<>(buckets.values());
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private TokenBucket bucketFor(String webHookUrl) {
+        return buckets.computeIfAbsent(webHookUrl, TokenBucket::new);
+    }
+
+    private void forward(DeployEvent event, CompletableFuture<DeliveryResult> result) {
+        CompletableFuture<DeliveryResult> sent;
+        try {
+            sent = downstream.send(event);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        if (sent == null) {
+            result.complete(new DeliveryResult(503, "OpsLevel delivery queue is full"));
+            return;
+        }
+        sent.whenComplete((delivered, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(delivered);
+            }
+        });
+    }
+}
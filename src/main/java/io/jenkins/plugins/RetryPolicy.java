@@ -0,0 +1,89 @@
+package io.jenkins.plugins;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a failed delivery is worth repeating and how long to wait before doing so.
+ *
+ * Delays grow exponentially from {@code baseDelayMillis} up to {@code maxDelayMillis} and are drawn
+ * uniformly below that ceiling ("full jitter") so builds that failed together do not retry together.
+ * A {@code Retry-After} from OpsLevel is a lower bound on the delay. No attempt is scheduled past
+ * {@code deadlineMillis} after the deploy was published.
+ */
+public class RetryPolicy {
+
+    public final long baseDelayMillis;
+    public final long maxDelayMillis;
+    public final long deadlineMillis;
+
+    public RetryPolicy(long baseDelayMillis, long maxDelayMillis, long deadlineMillis) {
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public boolean isEnabled() {
+        return deadlineMillis > 0;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} after which no attempt of the event is scheduled
+     */
+    public long deadlineNanos(DeployEvent event) {
+        return event.createdNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    public boolean isRetryable(DeliveryResult delivered, Throwable failure) {
+        if (failure != null) {
+            return unwrap(failure) instanceof IOException;
+        }
+        return delivered.isTransient();
+    }
+
+    /**
+     * @param attemptsMade number of attempts that already failed, at least 1
+     */
+    public long delayMillis(int attemptsMade, DeliveryResult last) {
+        int doublings = Math.min(Math.max(attemptsMade - 1, 0), 30);
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << doublings);
+        long delay = (long) (ThreadLocalRandom.current().nextDouble() * ceiling);
+
+        long retryAfter = last == null ? -1 : parseRetryAfter(last.retryAfter, System.currentTimeMillis());
+        return Math.max(delay, retryAfter);
+    }
+
+    /**
+     * @return the wait requested by a {@code Retry-After} header in milliseconds, or -1 if there is none
+     */
+    static long parseRetryAfter(String retryAfter, long nowMillis) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // Not delay-seconds, try an HTTP-date
+        }
+        try {
+            long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - nowMillis);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        while ((failure instanceof CompletionException || failure instanceof ExecutionException) && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+}
@@ -0,0 +1,136 @@
+package io.jenkins.plugins;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Repeats transient delivery failures according to a {@link RetryPolicy}.
+ *
+ * Waiting happens on a timer thread, never on the caller's thread: the returned future completes
+ * with the final outcome once an attempt succeeds, fails permanently, or the deadline is reached.
+ */
+public class RetryingSender implements DeploySender, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryingSender.class);
+
+    private final DeploySender downstream;
+    private final Supplier<RetryPolicy> policy;
+    private final ScheduledExecutorService timer;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public RetryingSender(DeploySender downstream, Supplier<RetryPolicy> policy) {
+        this.downstream = downstream;
+        this.policy = policy;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "OpsLevel retry timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Makes the first attempt right away.
+     *
+     * @return null if the downstream stage is at capacity, so the caller can fall back
+     */
+    @Override
+    public CompletableFuture<DeliveryResult> send(DeployEvent event) {
+        CompletableFuture<DeliveryResult> sent = downstream.send(event);
+        if (sent == null) {
+            return null;
+        }
+        long deadline = policy.get().deadlineNanos(event);
+        CompletableFuture<DeliveryResult> result = new CompletableFuture<>();
+        sent.whenComplete((delivered, failure) -> onOutcome(event, 1, deadline, result, delivered, failure));
+        return result;
+    }
+
+    /**
+     * Takes over an event whose first {@code attemptsMade} attempts were made elsewhere, e.g. on the build
+     * thread, and schedules the next one after a backoff. The time spent elsewhere counts against the deadline.
+     */
+    public CompletableFuture<DeliveryResult> retry(DeployEvent event, int attemptsMade, DeliveryResult last, Throwable failure) {
+        long deadline = policy.get().deadlineNanos(event);
+        CompletableFuture<DeliveryResult> result = new CompletableFuture<>();
+        onOutcome(event, attemptsMade, deadline, result, last, failure);
+        return result;
+    }
+
+    /**
+     * @return deploys waiting for their next attempt
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private void attempt(DeployEvent event, int attemptsMade, long deadline, CompletableFuture<DeliveryResult> result) {
+        CompletableFuture<DeliveryResult> sent;
+        try {
+            sent = downstream.send(event);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        if (sent == null) {
+            onOutcome(event, attemptsMade + 1, deadline, result,
+                new DeliveryResult(503, "OpsLevel delivery queue is full"), null);
+            return;
+        }
+        sent.whenComplete((delivered, failure) -> onOutcome(event, attemptsMade + 1, deadline, result, delivered, failure));
+    }
+
+    private void onOutcome(DeployEvent event, int attemptsMade, long deadline, CompletableFuture<DeliveryResult> result,
+                           DeliveryResult delivered, Throwable failure) {
+        RetryPolicy retryPolicy = policy.get();
+        if (!retryPolicy.isEnabled() || !retryPolicy.isRetryable(delivered, failure)) {
+            complete(result, delivered, failure);
+            return;
+        }
+
+        long delay = retryPolicy.delayMillis(attemptsMade, delivered);
+        if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) > deadline) {
+            log.warn("Giving up on OpsLevel deploy {} after {} attempt(s): {}", event, attemptsMade,
+                failure != null ? failure.toString() : delivered);
+            DeliveryMetrics.get().onAbandoned();
+            complete(result, delivered, failure);
+            return;
+        }
+
+        log.info("OpsLevel deploy {} attempt {} failed ({}), retrying in {} ms", event, attemptsMade,
+            failure != null ? failure.toString() : delivered, delay);
+        try {
+            waiting.incrementAndGet();
+            timer.schedule(() -> {
+                waiting.decrementAndGet();
+                attempt(event, attemptsMade, deadline, result);
+            }, delay, TimeUnit.MILLISECONDS);
+            DeliveryMetrics.get().onRetried();
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            // Shutting down
+            complete(result, delivered, failure);
+        }
+    }
+
+    private static void complete(CompletableFuture<DeliveryResult> result, DeliveryResult delivered, Throwable failure) {
+        if (failure != null) {
+            result.completeExceptionally(failure);
+        } else {
+            result.complete(delivered);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package io.jenkins.plugins;
+
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import jenkins.scm.RunWithSCM;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Every commit a deploy ships: the change sets of the build and of the builds before it that did
+ * not deploy, oldest first.
+ *
+ * Change set entries are read one at a time and only a small {@link Change} is kept of each, at
+ * most {@code max} of them. When there are more, the newest are kept and the payload says the
+ * list was truncated.
+ */
+public class ShippedCommits {
+
+    // Don't load the history of a job that has been failing for months
+    static final int MAX_BUILDS = 50;
+    static final int MAX_MESSAGE_LENGTH = 1000;
+
+    public final List<Change> changes;
+    public final boolean truncated;
+
+    ShippedCommits(List<Change> changes, boolean truncated) {
+        this.changes = Collections.unmodifiableList(changes);
+        this.truncated = truncated;
+    }
+
+    /**
+     * @return the commits since the last build that deployed, null if {@code max} is 0 or the build has no SCM
+     */
+    static ShippedCommits collect(Run<?, ?> build, int max) {
+        if (max <= 0 || !(build instanceof RunWithSCM)) {
+            return null;
+        }
+        Collector collector = new Collector(max);
+        Run<?, ?> current = build;
+        for (int walked = 1; ; walked++) {
+            for (ChangeLogSet<? extends ChangeLogSet.Entry> changeSet : changeSets(current)) {
+                for (ChangeLogSet.Entry entry : changeSet) {
+                    collector.add(Change.of(entry));
+                }
+            }
+            collector.endBuild();
+
+            Run<?, ?> previous = current.getPreviousBuild();
+            if (previous == null || deployed(previous)) {
+                break;
+            }
+            if (walked == MAX_BUILDS || (collector.isFull() && hasChanges(previous))) {
+                collector.truncate();
+                break;
+            }
+            current = previous;
+        }
+        return collector.finish();
+    }
+
+    // Same rule as JobListener.onCompleted, a build still running is treated as deploying its own changes
+    private static boolean deployed(Run<?, ?> build) {
+        Result result = build.getResult();
+        return result == null || result.isBetterOrEqualTo(Result.UNSTABLE);
+    }
+
+    private static boolean hasChanges(Run<?, ?> build) {
+        for (ChangeLogSet<? extends ChangeLogSet.Entry> changeSet : changeSets(build)) {
+            if (!changeSet.isEmptySet()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Freestyle and Pipeline builds both keep their change sets
+    private static List<ChangeLogSet<? extends ChangeLogSet.Entry>> changeSets(Run<?, ?> build) {
+        return build instanceof RunWithSCM
+            ? ((RunWithSCM<?, ?>) build).getChangeSets()
+            : Collections.<ChangeLogSet<? extends ChangeLogSet.Entry>>emptyList();
+    }
+
+    void writeTo(JsonGenerator json) {
+        json.writeStartArray("commits");
+        for (Change change : changes) {
+            change.writeTo(json);
+        }
+        json.writeEnd();
+        if (truncated) {
+            json.write("commits_truncated", true);
+        }
+    }
+
+    /**
+     * Keeps the newest {@code max} changes. Builds are fed newest first, the changes of each build
+     * in the order the SCM lists them, which is oldest first.
+     */
+    static class Collector {
+        private final int max;
+        private final ArrayDeque<Change> shipped = new ArrayDeque<>();
+        private final ArrayDeque<Change> build = new ArrayDeque<>();
+        private boolean truncated;
+
+        Collector(int max) {
+            this.max = max;
+        }
+
+        void add(Change change) {
+            if (shipped.size() + build.size() == max) {
+                truncated = true;
+                if (build.isEmpty()) {
+                    // Everything kept so far is newer
+                    return;
+                }
+                build.removeFirst();
+            }
+            build.addLast(change);
+        }
+
+        void endBuild() {
+            while (!build.isEmpty()) {
+                shipped.addFirst(build.removeLast());
+            }
+        }
+
+        boolean isFull() {
+            return shipped.size() >= max;
+        }
+
+        void truncate() {
+            truncated = true;
+        }
+
+        ShippedCommits finish() {
+            endBuild();
+            return new ShippedCommits(new ArrayList<>(shipped), truncated);
+        }
+    }
+
+    public static class Change {
+        public final String sha;
+        public final String message;
+        public final String authorName;
+        // Milliseconds since the epoch, -1 if the SCM does not know
+        public final long timestamp;
+
+        public Change(String sha, String message, String authorName, long timestamp) {
+            this.sha = sha;
+            this.message = message;
+            this.authorName = authorName;
+            this.timestamp = timestamp;
+        }
+
+        static Change of(ChangeLogSet.Entry entry) {
+            String message = entry.getMsg();
+            if (message != null && message.length() > MAX_MESSAGE_LENGTH) {
+                message = message.substring(0, MAX_MESSAGE_LENGTH);
+            }
+            User author = entry.getAuthor();
+            return new Change(entry.getCommitId(), message, author != null ? author.getFullName() : null,
+                entry.getTimestamp());
+        }
+
+        void writeTo(JsonGenerator json) {
+            json.writeStartObject();
+            DeployPayload.write(json, "sha", sha);
+            DeployPayload.write(json, "message", message);
+            DeployPayload.write(json, "author_name", authorName);
+            if (timestamp >= 0) {
+                json.write("date", DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(timestamp)));
+            }
+            json.writeEnd();
+        }
+    }
+}
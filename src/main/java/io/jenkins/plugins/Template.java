@@ -0,0 +1,137 @@
+package io.jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A publisher field compiled once into literal parts and {@code ${VAR}} references.
+ *
+ * Follows the syntax the fields were expanded with before: {@code ${VAR}}, {@code ${VAR:-default}}
+ * and {@code $${VAR}} for a literal {@code ${VAR}}. References to variables that are not set are
+ * kept as written. Expansion is a single pass over the segments.
+ */
+public class Template {
+
+    private static final String DEFAULT_DELIMITER = ":-";
+
+    private final String source;
+    private final Segment[] segments;
+    private final Set<String> variables;
+
+    private Template(String source, Segment[] segments, Set<String> variables) {
+        this.source = source;
+        this.segments = segments;
+        this.variables = variables;
+    }
+
+    /**
+     * @return null for a null field, so unset fields stay unset
+     */
+    public static Template compile(String source) {
+        if (source == null) {
+            return null;
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        Set<String> variables = new LinkedHashSet<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '$' && source.startsWith("${", i + 1)) {
+                // Escaped, the rest of the reference is copied as written
+                literal.append('$');
+                i += 2;
+                continue;
+            }
+            int end = c == '$' && source.startsWith("{", i + 1) ? source.indexOf('}', i + 2) : -1;
+            if (end < 0) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+
+            if (literal.length() > 0) {
+                segments.add(Segment.literal(literal.toString()));
+                literal.setLength(0);
+            }
+            String reference = source.substring(i + 2, end);
+            int delimiter = reference.indexOf(DEFAULT_DELIMITER);
+            String name = delimiter < 0 ? reference : reference.substring(0, delimiter);
+            String defaultValue = delimiter < 0 ? null : reference.substring(delimiter + DEFAULT_DELIMITER.length());
+            segments.add(Segment.variable(name, defaultValue, source.substring(i, end + 1)));
+            variables.add(name);
+            i = end + 1;
+        }
+        if (literal.length() > 0 || segments.isEmpty()) {
+            segments.add(Segment.literal(literal.toString()));
+        }
+        return new Template(source, segments.toArray(new Segment[0]), Collections.unmodifiableSet(variables));
+    }
+
+    /**
+     * True when the field has no variables, in which case {@link #expand} always returns the same string.
+     */
+    public boolean isConstant() {
+        return variables.isEmpty();
+    }
+
+    /**
+     * The names of the variables the field refers to, in order of first use.
+     */
+    public Set<String> getVariables() {
+        return variables;
+    }
+
+    public String expand(Map<String, String> env) {
+        if (segments.length == 1) {
+            return segments[0].expand(env);
+        }
+        StringBuilder result = new StringBuilder(source.length() + 32);
+        for (Segment segment : segments) {
+            result.append(segment.expand(env));
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private static class Segment {
+        // The literal text, or for a variable what to print when it is not set
+        final String text;
+        final String variable;
+        final String defaultValue;
+
+        private Segment(String text, String variable, String defaultValue) {
+            this.text = text;
+            this.variable = variable;
+            this.defaultValue = defaultValue;
+        }
+
+        static Segment literal(String text) {
+            return new Segment(text, null, null);
+        }
+
+        static Segment variable(String name, String defaultValue, String reference) {
+            return new Segment(reference, name, defaultValue);
+        }
+
+        String expand(Map<String, String> env) {
+            if (variable == null) {
+                return text;
+            }
+            String value = env.get(variable);
+            if (value != null) {
+                return value;
+            }
+            return defaultValue != null ? defaultValue : text;
+        }
+    }
+}
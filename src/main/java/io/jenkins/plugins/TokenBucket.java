@@ -0,0 +1,112 @@
+package io.jenkins.plugins;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free token bucket for one webhook URL.
+ *
+ * Rather than counting tokens, the bucket keeps the time at which it would be empty again if
+ * nothing else arrived, and every caller moves that time forward by one token's worth with a
+ * single compare-and-set. A caller that finds the bucket empty gets back how long to wait for
+ * its token instead of being refused, which is how excess deploys queue rather than fail.
+ */
+public class TokenBucket {
+
+    private final String name;
+    private final AtomicLong emptyAt = new AtomicLong(System.nanoTime());
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public TokenBucket(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Takes a token, possibly one that only becomes available in the future.
+     *
+     * @return nanoseconds to wait before using the token, 0 if it can be used right away
+     */
+    public long reserve(double ratePerSecond, int burst) {
+        long interval = intervalNanos(ratePerSecond);
+        long burstWindow = interval * Math.max(1, burst);
+        while (true) {
+            long now = System.nanoTime();
+            long current = emptyAt.get();
+            long next = (current - now > 0 ? current : now) + interval;
+            if (emptyAt.compareAndSet(current, next)) {
+                return Math.max(0, next - burstWindow - now);
+            }
+        }
+    }
+
+    /**
+     * Takes a token only if one is available right now.
+     */
+    public boolean tryAcquire(double ratePerSecond, int burst) {
+        long interval = intervalNanos(ratePerSecond);
+        long burstWindow = interval * Math.max(1, burst);
+        while (true) {
+            long now = System.nanoTime();
+            long current = emptyAt.get();
+            long next = (current - now > 0 ? current : now) + interval;
+            if (next - burstWindow - now > 0) {
+                return false;
+            }
+            if (emptyAt.compareAndSet(current, next)) {
+                passed.increment();
+                return true;
+            }
+        }
+    }
+
+    void onQueued() {
+        queued.incrementAndGet();
+    }
+
+    void onReleased(long waitedNanos) {
+        if (waitedNanos > 0) {
+            queued.decrementAndGet();
+            delayed.increment();
+            waitNanos.add(waitedNanos);
+            maxWaitNanos.accumulateAndGet(waitedNanos, Math::max);
+        } else {
+            passed.increment();
+        }
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getPassed() {
+        return passed.sum();
+    }
+
+    public long getDelayed() {
+        return delayed.sum();
+    }
+
+    public long getAverageWaitMillis() {
+        long count = delayed.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.sum() / count);
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    private static long intervalNanos(double ratePerSecond) {
+        return Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+    }
+}
@@ -1,6 +1,7 @@
 package io.jenkins.plugins;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import hudson.tasks.Notifier;
 import hudson.tasks.BuildStepMonitor;
 import hudson.Extension;
@@ -11,6 +12,10 @@ import hudson.Launcher;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +29,17 @@ public class WebHookPublisher extends Notifier {
     public String deployerId;
     public String deployerEmail;
     public String deployerName;
+    private boolean captureDiagnostics;
+
+    // Compiled when the configuration is bound or loaded, see compileTemplates()
+    private transient Template serviceAliasTemplate;
+    private transient Template environmentTemplate;
+    private transient Template descriptionTemplate;
+    private transient Template deployUrlTemplate;
+    private transient Template deployerIdTemplate;
+    private transient Template deployerEmailTemplate;
+    private transient Template deployerNameTemplate;
+    private transient Set<String> templateVariables;
 
     private static final Logger log = LoggerFactory.getLogger(JobListener.class);
 
@@ -39,6 +55,75 @@ public class WebHookPublisher extends Notifier {
         this.deployerId = cleanupValue(deployerId);
         this.deployerEmail = cleanupValue(deployerEmail);
         this.deployerName = cleanupValue(deployerName);
+        compileTemplates();
+    }
+
+    public boolean isCaptureDiagnostics() {
+        return captureDiagnostics;
+    }
+
+    @DataBoundSetter
+    public void setCaptureDiagnostics(boolean captureDiagnostics) {
+        this.captureDiagnostics = captureDiagnostics;
+    }
+
+    protected Object readResolve() {
+        compileTemplates();
+        return this;
+    }
+
+    private void compileTemplates() {
+        serviceAliasTemplate = Template.compile(serviceAlias);
+        environmentTemplate = Template.compile(environment);
+        descriptionTemplate = Template.compile(description);
+        deployUrlTemplate = Template.compile(deployUrl);
+        deployerIdTemplate = Template.compile(deployerId);
+        deployerEmailTemplate = Template.compile(deployerEmail);
+        deployerNameTemplate = Template.compile(deployerName);
+
+        Set<String> variables = new HashSet<>();
+        for (Template template : Arrays.asList(serviceAliasTemplate, environmentTemplate, descriptionTemplate,
+            deployUrlTemplate, deployerIdTemplate, deployerEmailTemplate, deployerNameTemplate)) {
+            if (template != null) {
+                variables.addAll(template.getVariables());
+            }
+        }
+        templateVariables = Collections.unmodifiableSet(variables);
+    }
+
+    /**
+     * Every variable referenced by the templated fields, i.e. what has to be resolved to publish a deploy.
+     */
+    Set<String> getTemplateVariables() {
+        return templateVariables;
+    }
+
+    Template getServiceAliasTemplate() {
+        return serviceAliasTemplate;
+    }
+
+    Template getEnvironmentTemplate() {
+        return environmentTemplate;
+    }
+
+    Template getDescriptionTemplate() {
+        return descriptionTemplate;
+    }
+
+    Template getDeployUrlTemplate() {
+        return deployUrlTemplate;
+    }
+
+    Template getDeployerIdTemplate() {
+        return deployerIdTemplate;
+    }
+
+    Template getDeployerEmailTemplate() {
+        return deployerEmailTemplate;
+    }
+
+    Template getDeployerNameTemplate() {
+        return deployerNameTemplate;
     }
 
     private String cleanupValue(String someValue) {
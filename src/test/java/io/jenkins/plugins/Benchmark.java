@@ -0,0 +1,8 @@
+package io.jenkins.plugins;
+
+/**
+ * JUnit category of tests that measure rather than check, left out of {@code mvn test}.
+ * Run them with {@code mvn test -Pbenchmark}.
+ */
+public interface Benchmark {
+}
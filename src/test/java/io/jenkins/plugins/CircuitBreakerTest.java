@@ -0,0 +1,66 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(20);
+
+    CircuitBreaker breaker = new CircuitBreaker("opslevel.example.org:443");
+
+    @Test
+    public void testOpensAtFailureRateAndFailsFast() {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(50, 100, 10000, 4, 4, 60000, 1);
+        record(settings, false, FAST);
+        record(settings, true, FAST);
+        record(settings, false, FAST);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        record(settings, true, FAST);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.tryAcquirePermission(settings));
+        Assert.assertEquals(1, breaker.getOpenedCount());
+        Assert.assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    public void testOpensAtSlowCallRate() {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(100, 50, 10000, 2, 2, 60000, 1);
+        record(settings, false, SLOW);
+        record(settings, false, SLOW);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenTrialsDecideWhetherToClose() {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(50, 100, 10000, 2, 2, 0, 2);
+        record(settings, true, FAST);
+        record(settings, true, FAST);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // The open period is over, a failed trial opens the breaker again
+        record(settings, true, FAST);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertEquals(2, breaker.getOpenedCount());
+
+        Assert.assertTrue(breaker.tryAcquirePermission(settings));
+        Assert.assertTrue(breaker.tryAcquirePermission(settings));
+        Assert.assertFalse(breaker.tryAcquirePermission(settings));
+        breaker.onResult(settings, false, FAST);
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(settings, false, FAST);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertEquals(2, breaker.getHalfOpenedCount());
+        Assert.assertEquals(1, breaker.getClosedCount());
+        Assert.assertEquals(-1, breaker.getFailureRate());
+    }
+
+    private void record(CircuitBreaker.Settings settings, boolean failed, long durationNanos) {
+        Assert.assertTrue(breaker.tryAcquirePermission(settings));
+        breaker.onResult(settings, failed, durationNanos);
+    }
+}
@@ -0,0 +1,109 @@
+package io.jenkins.plugins;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class CircuitBreakingSenderTest {
+
+    MockWebServer server = new MockWebServer();
+    DeployDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        // One call at a time, so every later deploy waits in OkHttp's queue
+        Dispatcher okHttpDispatcher = new Dispatcher();
+        okHttpDispatcher.setMaxRequestsPerHost(1);
+        dispatcher = new DeployDispatcher(new OkHttpClient.Builder()
+            .dispatcher(okHttpDispatcher)
+            .eventListenerFactory(DeliveryEventListener.FACTORY)
+            .build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testQueueWaitIsNotASlowCall() throws Exception {
+        /*
+            Ensure only the time a call spends with OpsLevel counts against the slow call threshold
+        */
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+        }
+        CircuitBreakingSender sender = new CircuitBreakingSender(event -> dispatcher.submit(event, 10),
+            () -> new CircuitBreaker.Settings(100, 50, 500, 4, 4, 60000, 1));
+
+        List<CompletableFuture<DeliveryResult>> sent = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            sent.add(sender.send(event(server.url("").toString())));
+        }
+        for (CompletableFuture<DeliveryResult> result : sent) {
+            DeliveryResult delivered = result.get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(200, delivered.code);
+            Assert.assertTrue(delivered.durationNanos >= TimeUnit.MILLISECONDS.toNanos(300));
+        }
+
+        // The last two waited over 500ms in the queue, but were not slow themselves
+        CircuitBreaker breaker = sender.breakerFor(server.url("").toString());
+        Assert.assertEquals(0, breaker.getSlowCallRate());
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testSlowResponseOpensBreaker() throws Exception {
+        /*
+            Ensure a call that is slow to answer still counts as a slow call
+        */
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}").setHeadersDelay(700, TimeUnit.MILLISECONDS));
+        CircuitBreakingSender sender = new CircuitBreakingSender(event -> dispatcher.submit(event, 10),
+            () -> new CircuitBreaker.Settings(100, 50, 500, 1, 1, 60000, 1));
+
+        Assert.assertEquals(200, sender.send(event(server.url("").toString())).get(10, TimeUnit.SECONDS).code);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, sender.breakerFor(server.url("").toString()).getState());
+    }
+
+    @Test
+    public void testSendNowSharesTheBreaker() throws Exception {
+        /*
+            Ensure a synchronous attempt is recorded by the same breaker and skipped while it is open
+        */
+        CircuitBreakingSender sender = new CircuitBreakingSender(event -> dispatcher.submit(event, 10),
+            () -> new CircuitBreaker.Settings(50, 100, 10000, 1, 1, 60000, 1));
+        String webhookUrl = server.url("").toString();
+
+        try {
+            sender.sendNow(event(webhookUrl), event -> {
+                throw new IOException("Connection refused");
+            });
+            Assert.fail("The failure should reach the caller");
+        } catch (IOException expected) {
+            // Recorded as a failed call
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, sender.breakerFor(webhookUrl).getState());
+
+        Assert.assertNull(sender.sendNow(event(webhookUrl), event -> {
+            throw new AssertionError("The breaker is open");
+        }));
+        Assert.assertEquals(503, sender.send(event(webhookUrl)).get(5, TimeUnit.SECONDS).code);
+        Assert.assertEquals(0, server.getRequestCount());
+    }
+
+    private static DeployEvent event(String webhookUrl) {
+        return new DeployEvent(webhookUrl, "a", JsonPayload.of("{\"dedup_id\":\"a\"}"), "test0", 1);
+    }
+}
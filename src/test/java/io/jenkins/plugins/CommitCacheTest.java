@@ -0,0 +1,148 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CommitCacheTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static CommitRecord commit(String sha) {
+        return new CommitRecord(sha, "Subject of " + sha, "Ada", "ada@example.org", 1600000000L,
+            "Grace", "grace@example.org", 1600000100L);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        /* Ensure the commit that was looked up least recently is the one evicted */
+        CommitCache cache = new CommitCache(new File(tmp.getRoot(), "cache.bin"), () -> 2);
+        cache.put(commit("aaaaaaa"));
+        cache.put(commit("bbbbbbb"));
+        Assert.assertNotNull(cache.get("aaaaaaa"));
+        cache.put(commit("ccccccc"));
+
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertNull(cache.get("bbbbbbb"));
+        Assert.assertNotNull(cache.get("aaaaaaa"));
+        Assert.assertNotNull(cache.get("ccccccc"));
+    }
+
+    @Test
+    public void testCountsHitsAndMisses() throws Exception {
+        /* Ensure lookups are counted and SHAs match regardless of case */
+        CommitCache cache = new CommitCache(new File(tmp.getRoot(), "cache.bin"), () -> 10);
+        Assert.assertEquals(-1, cache.getHitRate());
+
+        cache.put(commit("abcdef0"));
+        Assert.assertNotNull(cache.get("ABCDEF0"));
+        Assert.assertNull(cache.get("1234567"));
+        Assert.assertNotNull(cache.get("abcdef0"));
+        Assert.assertNull(cache.get("7654321"));
+
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(50, cache.getHitRate());
+    }
+
+    @Test
+    public void testShrinksWithCapacity() throws Exception {
+        /* Ensure lowering the setting trims the cache on the next put, and 0 keeps nothing */
+        AtomicInteger capacity = new AtomicInteger(5);
+        CommitCache cache = new CommitCache(new File(tmp.getRoot(), "cache.bin"), capacity::get);
+        for (int i = 0; i < 5; i++) {
+            cache.put(commit("000000" + i));
+        }
+        capacity.set(2);
+        cache.put(commit("0000009"));
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(4, cache.getEvictions());
+
+        capacity.set(0);
+        cache.put(commit("000000a"));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testSurvivesRestart() throws Exception {
+        /* Ensure a saved cache is read back in the same recency order and with every field */
+        File file = new File(tmp.getRoot(), "opslevel/cache.bin");
+        CommitCache cache = new CommitCache(file, () -> 2);
+        cache.put(commit("aaaaaaa"));
+        cache.put(commit("bbbbbbb"));
+        cache.get("aaaaaaa");
+        cache.save();
+
+        CommitCache restarted = new CommitCache(file, () -> 2);
+        Assert.assertEquals(2, restarted.getSize());
+        restarted.put(commit("ccccccc"));
+        Assert.assertNull(restarted.get("bbbbbbb"));
+
+        CommitRecord read = restarted.get("aaaaaaa");
+        Assert.assertEquals("Subject of aaaaaaa", read.subject);
+        Assert.assertEquals("ada@example.org", read.authorEmail);
+        Assert.assertEquals(1600000000L, read.authorTime);
+        Assert.assertEquals("Grace", read.committerName);
+        Assert.assertEquals(1600000100L, read.commitTime);
+    }
+
+    @Test
+    public void testIgnoresUnreadableFile() throws Exception {
+        /* Ensure a corrupt cache file starts an empty cache instead of failing */
+        File file = tmp.newFile("cache.bin");
+        Files.write(file.toPath(), new byte[] {1, 2, 3});
+
+        CommitCache cache = new CommitCache(file, () -> 10);
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testSavesAfterEnoughChanges() throws Exception {
+        /* Ensure the cache reaches its file once enough commits were added, without waiting for shutdown */
+        File file = new File(tmp.getRoot(), "opslevel/cache.bin");
+        CommitCache cache = new CommitCache(file, () -> 10, 2, TimeUnit.HOURS.toMillis(1));
+        cache.put(commit("aaaaaaa"));
+        cache.put(commit("bbbbbbb"));
+
+        Assert.assertEquals(2, sizeOnDisk(file, 2));
+        cache.close();
+    }
+
+    @Test
+    public void testSavesPeriodically() throws Exception {
+        /* Ensure a single change is saved by the periodic save, and close saves what is left */
+        File file = new File(tmp.getRoot(), "opslevel/cache.bin");
+        CommitCache cache = new CommitCache(file, () -> 10, 100, 100);
+        cache.put(commit("aaaaaaa"));
+        Assert.assertEquals(1, sizeOnDisk(file, 1));
+
+        cache.close();
+        cache.put(commit("bbbbbbb"));
+        cache.close();
+        Assert.assertEquals(2, sizeOnDisk(file, 2));
+    }
+
+    // Waits up to five seconds for the file to hold the expected number of commits
+    private static int sizeOnDisk(File file, int expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        int size = 0;
+        while (System.currentTimeMillis() < deadline) {
+            if (file.isFile()) {
+                // Not closed, that would save it over the file being checked
+                size = new CommitCache(file, () -> 10).getSize();
+                if (size == expected) {
+                    break;
+                }
+            }
+            Thread.sleep(20);
+        }
+        return size;
+    }
+}
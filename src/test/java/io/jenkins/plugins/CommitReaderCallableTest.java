@@ -0,0 +1,47 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+public class CommitReaderCallableTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testReadsCommitInWorkspaceAndSerializesIt() throws Exception {
+        /* Ensure the callable survives the trip to an agent and its record the trip back */
+        File workTree = GitCommandReaderTest.unzip(tmp, "/project-with-git.zip");
+        CommitReaderCallable callable = roundTrip(new CommitReaderCallable("500ca67ed52a9ca20f3181e618347e61f86a0625", 10000, 1024));
+
+        CommitRecord commit = roundTrip(callable.invoke(workTree, null));
+        Assert.assertEquals("500ca67ed52a9ca20f3181e618347e61f86a0625", commit.sha);
+        Assert.assertEquals("Fix typo", commit.subject);
+        Assert.assertTrue(commit.authorTime > 0);
+    }
+
+    @Test
+    public void testNoRepositoryInWorkspace() throws Exception {
+        /* Ensure a workspace without git gives no commit rather than an error */
+        CommitReaderCallable callable = new CommitReaderCallable("500ca67ed52a9ca20f3181e618347e61f86a0625", 10000, 1024);
+        Assert.assertNull(callable.invoke(tmp.newFolder("empty"), null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+}
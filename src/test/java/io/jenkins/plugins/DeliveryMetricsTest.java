@@ -0,0 +1,69 @@
+package io.jenkins.plugins;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+public class DeliveryMetricsTest {
+
+    private final MockWebServer server = new MockWebServer();
+    private final OkHttpClient client = new OkHttpClient();
+
+    @Before
+    public void startServer() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.shutdown();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private DeployEvent event() {
+        return new DeployEvent(server.url("/").toString(), "dedup", JsonPayload.of("{\"service\":\"cart\"}"), "cart", 1);
+    }
+
+    @Test
+    public void testCountsEveryAttempt() throws Exception {
+        /* Ensure sent and failed attempts are counted and timed, on the build thread and in the background */
+        DeliveryMetrics metrics = DeliveryMetrics.get();
+        long sent = metrics.getSent();
+        long failed = metrics.getFailed();
+        long roundTrips = metrics.getRoundTrip().getCount();
+        long serialized = metrics.getSerialization().getCount();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+
+        DeployDispatcher dispatcher = new DeployDispatcher(client);
+        PrintStream console = new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        dispatcher.send(event(), console);
+        dispatcher.send(event(), console);
+        CompletableFuture<DeliveryResult> background = dispatcher.submit(event(), 10);
+        Assert.assertTrue(background.get(10, TimeUnit.SECONDS).isSuccessful());
+
+        Assert.assertEquals(sent + 2, metrics.getSent());
+        Assert.assertEquals(failed + 1, metrics.getFailed());
+        Assert.assertEquals(roundTrips + 3, metrics.getRoundTrip().getCount());
+        Assert.assertEquals(serialized + 3, metrics.getSerialization().getCount());
+    }
+
+    @Test
+    public void testListsEveryTimer() {
+        /* Ensure the timers are reported in pipeline order under stable names */
+        Assert.assertArrayEquals(new String[] {"held.onCompleted", "held.onFinalized", "environment", "git.lookup",
+            "serialization", "http.roundtrip"}, DeliveryMetrics.get().getTimers().keySet().toArray());
+    }
+}
@@ -0,0 +1,131 @@
+package io.jenkins.plugins;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+public class DeliveryRecordActionTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final MockWebServer server = new MockWebServer();
+    private final OkHttpClient client = new OkHttpClient.Builder()
+        .eventListenerFactory(DeliveryEventListener.FACTORY)
+        .retryOnConnectionFailure(false)
+        .build();
+
+    @Before
+    public void startServer() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.shutdown();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private void post(DeliveryRecordAction.Delivery delivery) throws IOException {
+        JsonPayload payload = JsonPayload.of("{\"service\":\"cart\"}");
+        DeployEvent event = new DeployEvent(server.url("/").toString(), "dedup", payload, "cart", 1, delivery);
+        Request request = new Request.Builder()
+            .url(server.url("/"))
+            .post(new JsonPayloadBody(payload))
+            .tag(DeployEvent.class, event)
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            response.body().string();
+        }
+    }
+
+    @Test
+    public void testRecordsEveryStageOfAnAttempt() throws Exception {
+        /* Ensure a tagged call records its attempt, status and stage timings, and a reused connection takes no time to connect */
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        DeliveryRecordAction record = new DeliveryRecordAction();
+        DeliveryRecordAction.Delivery delivery = record.add("dedup", server.url("/").toString());
+
+        post(delivery);
+        Assert.assertEquals(1, delivery.getAttempts());
+        Assert.assertEquals("HTTP 503", delivery.getStatus());
+        Assert.assertTrue(delivery.getConnectNanos() > 0);
+
+        post(delivery);
+        Assert.assertEquals(2, delivery.getAttempts());
+        Assert.assertEquals(200, delivery.getCode());
+        Assert.assertEquals(0, delivery.getConnectNanos());
+        Assert.assertTrue(delivery.getSerializeNanos() >= 0);
+        Assert.assertTrue(delivery.getTtfbNanos() >= 0);
+        Assert.assertEquals(1, record.getDeliveries().size());
+    }
+
+    @Test
+    public void testRecordsFailures() throws Exception {
+        /* Ensure an attempt without a response shows why it failed */
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        DeliveryRecordAction.Delivery delivery = new DeliveryRecordAction().add("dedup", server.url("/").toString());
+        delivery.setOutcome("delivered");
+
+        try {
+            post(delivery);
+            Assert.fail("The server hung up");
+        } catch (IOException expected) {
+            // Recorded by the listener
+        }
+        Assert.assertEquals(1, delivery.getAttempts());
+        Assert.assertTrue(delivery.getStatus(), delivery.getStatus().startsWith("failed: "));
+        Assert.assertEquals("n/a", delivery.getTtfbMillis());
+    }
+
+    @Test(timeout = 10000)
+    public void testSavesOffTheCallingThread() throws Exception {
+        /* Ensure updating a delivery does not wait for its file to be written, and the update still reaches the file */
+        File file = new File(tmp.getRoot(), DeliveryRecordAction.FILE);
+        DeliveryRecordAction.Store store = new DeliveryRecordAction.Store(file, new CopyOnWriteArrayList<>());
+        DeliveryRecordAction.Delivery delivery = new DeliveryRecordAction.Delivery(store, "dedup", server.url("/").toString());
+        store.deliveries.add(delivery);
+
+        // As a slow write of an earlier update
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            synchronized (store) {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        writer.start();
+        held.await();
+
+        delivery.setOutcome("queued");
+        delivery.onFinished(null);
+        release.countDown();
+        writer.join();
+        DeliveryRecordAction.flush();
+
+        DeliveryRecordAction.Store loaded = DeliveryRecordAction.Store.load(file);
+        Assert.assertEquals(1, loaded.deliveries.size());
+        Assert.assertEquals("queued", loaded.deliveries.get(0).getOutcome());
+    }
+}
@@ -0,0 +1,145 @@
+package io.jenkins.plugins;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonReader;
+import java.io.StringReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class DeployBatcherTest {
+
+    MockWebServer server = new MockWebServer();
+    DeployDispatcher dispatcher = new DeployDispatcher(new OkHttpClient());
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testFullBatchIsSentAsOneRequest() throws Exception {
+        /*
+            Ensure events for the same URL are framed as one JSON array and acknowledged individually
+        */
+        server.enqueue(new MockResponse().setBody(
+            "[{\"dedup_id\": \"b\", \"status\": 422, \"error\": \"Unknown service\"}, {\"dedup_id\": \"a\", \"result\": \"ok\"}]"));
+        DeployBatcher batcher = new DeployBatcher(event -> dispatcher.submit(event, 10), () -> 2, () -> 60000);
+        String webhookUrl = server.url("").toString();
+
+        CompletableFuture<DeliveryResult> first = batcher.send(event(webhookUrl, "a"));
+        CompletableFuture<DeliveryResult> second = batcher.send(event(webhookUrl, "b"));
+
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(request);
+        JsonReader jsonReader = Json.createReader(new StringReader(request.getBody().readUtf8()));
+        JsonArray body = jsonReader.readArray();
+        jsonReader.close();
+        Assert.assertEquals(2, body.size());
+        Assert.assertEquals("a", body.getJsonObject(0).getString("dedup_id"));
+        Assert.assertEquals("b", body.getJsonObject(1).getString("dedup_id"));
+
+        Assert.assertEquals(200, first.get(5, TimeUnit.SECONDS).code);
+        Assert.assertEquals(422, second.get(5, TimeUnit.SECONDS).code);
+        batcher.close();
+    }
+
+    @Test
+    public void testWindowFlushesPartialBatchPerUrl() throws Exception {
+        /*
+            Ensure a batch that never fills up is sent when its window elapses, separately for each URL
+        */
+        server.enqueue(new MockResponse().setBody("[{\"result\": \"ok\"}]"));
+        server.enqueue(new MockResponse().setBody("[{\"result\": \"ok\"}]"));
+        DeployBatcher batcher = new DeployBatcher(event -> dispatcher.submit(event, 10), () -> 50, () -> 100);
+
+        CompletableFuture<DeliveryResult> first = batcher.send(event(server.url("/one").toString(), "a"));
+        CompletableFuture<DeliveryResult> second = batcher.send(event(server.url("/two").toString(), "b"));
+
+        Assert.assertEquals(200, first.get(5, TimeUnit.SECONDS).code);
+        Assert.assertEquals(200, second.get(5, TimeUnit.SECONDS).code);
+        Assert.assertEquals(2, server.getRequestCount());
+        batcher.close();
+    }
+
+    @Test
+    public void testFailedBatchFailsEveryEvent() throws Exception {
+        /*
+            Ensure a batch OpsLevel could not take reports the same transient result for every event
+        */
+        server.enqueue(new MockResponse().setResponseCode(503));
+        DeployBatcher batcher = new DeployBatcher(event -> dispatcher.submit(event, 10), () -> 2, () -> 60000);
+        String webhookUrl = server.url("").toString();
+
+        CompletableFuture<DeliveryResult> first = batcher.send(event(webhookUrl, "a"));
+        CompletableFuture<DeliveryResult> second = batcher.send(event(webhookUrl, "b"));
+
+        Assert.assertTrue(first.get(5, TimeUnit.SECONDS).isTransient());
+        Assert.assertTrue(second.get(5, TimeUnit.SECONDS).isTransient());
+        batcher.close();
+    }
+
+    @Test
+    public void testRetriesEventWithTransientAck() throws Exception {
+        /*
+            Ensure an event acknowledged with a 503 in a successful batch is sent again on its own
+        */
+        server.enqueue(new MockResponse().setBody(
+            "[{\"dedup_id\": \"a\", \"result\": \"ok\"}, {\"dedup_id\": \"b\", \"status\": 503, \"error\": \"Busy\"}]"));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        RetryingSender retrier = new RetryingSender(event -> dispatcher.submit(event, 10),
+            () -> new RetryPolicy(10, 10, 60000));
+        DeployBatcher batcher = new DeployBatcher(event -> dispatcher.submit(event, 10), retrier, () -> 2, () -> 60000);
+        String webhookUrl = server.url("").toString();
+
+        CompletableFuture<DeliveryResult> first = batcher.send(event(webhookUrl, "a"));
+        CompletableFuture<DeliveryResult> second = batcher.send(event(webhookUrl, "b"));
+
+        Assert.assertEquals(200, first.get(5, TimeUnit.SECONDS).code);
+        Assert.assertEquals(200, second.get(5, TimeUnit.SECONDS).code);
+        Assert.assertEquals(2, server.getRequestCount());
+        server.takeRequest();
+        RecordedRequest retried = server.takeRequest(5, TimeUnit.SECONDS);
+        Assert.assertEquals("{\"dedup_id\":\"b\"}", retried.getBody().readUtf8());
+        batcher.close();
+        retrier.close();
+    }
+
+    @Test
+    public void testRetriesEventWithoutAck() throws Exception {
+        /*
+            Ensure an event the batch response left out is sent again rather than reported as failed
+        */
+        server.enqueue(new MockResponse().setBody("[{\"dedup_id\": \"a\", \"result\": \"ok\"}]"));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        RetryingSender retrier = new RetryingSender(event -> dispatcher.submit(event, 10),
+            () -> new RetryPolicy(10, 10, 60000));
+        DeployBatcher batcher = new DeployBatcher(event -> dispatcher.submit(event, 10), retrier, () -> 2, () -> 60000);
+        String webhookUrl = server.url("").toString();
+
+        CompletableFuture<DeliveryResult> first = batcher.send(event(webhookUrl, "a"));
+        CompletableFuture<DeliveryResult> second = batcher.send(event(webhookUrl, "b"));
+
+        Assert.assertEquals(200, first.get(5, TimeUnit.SECONDS).code);
+        Assert.assertEquals(200, second.get(5, TimeUnit.SECONDS).code);
+        Assert.assertEquals(2, server.getRequestCount());
+        batcher.close();
+        retrier.close();
+    }
+
+    private static DeployEvent event(String webhookUrl, String dedupId) {
+        return new DeployEvent(webhookUrl, dedupId, JsonPayload.of("{\"dedup_id\":\"" + dedupId + "\"}"), "test0", 1);
+    }
+}
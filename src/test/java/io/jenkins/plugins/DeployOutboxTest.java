@@ -0,0 +1,119 @@
+package io.jenkins.plugins;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeployOutboxTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    MockWebServer server = new MockWebServer();
+    DeployDispatcher dispatcher = new DeployDispatcher(new OkHttpClient());
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testDeliversAndCompactsJournaledEvents() throws Exception {
+        /*
+            Ensure journaled deploys are delivered once and their segment is removed after a restart
+        */
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        File dir = tmp.newFolder("outbox");
+
+        try (DeployOutbox outbox = new DeployOutbox(dir, event -> dispatcher.submit(event, 10))) {
+            outbox.append(event(1));
+            outbox.append(event(2));
+
+            Assert.assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+            Assert.assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+            awaitUnacknowledged(outbox, 0);
+        }
+
+        try (DeployOutbox outbox = new DeployOutbox(dir, event -> dispatcher.submit(event, 10))) {
+            Assert.assertEquals(0, outbox.getUnacknowledged());
+        }
+        Assert.assertNull(server.takeRequest(500, TimeUnit.MILLISECONDS));
+        // Only the empty segment opened by the last boot is left
+        File[] logs = dir.listFiles((d, name) -> name.endsWith(".log"));
+        Assert.assertEquals(1, logs.length);
+    }
+
+    @Test
+    public void testRedeliversAfterRestart() throws Exception {
+        /*
+            Ensure a deploy OpsLevel could not take is kept and sent again on the next boot
+        */
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        File dir = tmp.newFolder("outbox");
+
+        try (DeployOutbox outbox = new DeployOutbox(dir, event -> dispatcher.submit(event, 10))) {
+            outbox.append(event(1));
+            Assert.assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        }
+
+        try (DeployOutbox outbox = new DeployOutbox(dir, event -> dispatcher.submit(event, 10))) {
+            RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(request);
+            Assert.assertEquals("{\"deploy_number\":\"1\"}", request.getBody().readUtf8());
+            awaitUnacknowledged(outbox, 0);
+        }
+    }
+
+    @Test
+    public void testRescanRetriesEventsThatFailedAtOnce() throws Exception {
+        /*
+            Ensure a deploy whose delivery failed before send returned is picked up by the next rescan
+        */
+        AtomicInteger attempts = new AtomicInteger();
+        DeploySender sender = event -> CompletableFuture.completedFuture(attempts.incrementAndGet() == 1
+            ? new DeliveryResult(503, "Circuit breaker is open")
+            : new DeliveryResult(200, "{\"result\": \"ok\"}"));
+        File dir = tmp.newFolder("outbox");
+
+        try (DeployOutbox outbox = new DeployOutbox(dir, sender)) {
+            outbox.append(event(1));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (attempts.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, outbox.getUnacknowledged());
+
+            outbox.drain(true);
+            awaitUnacknowledged(outbox, 0);
+            Assert.assertEquals(2, attempts.get());
+        }
+    }
+
+    private DeployEvent event(int buildNumber) {
+        return new DeployEvent(server.url("").toString(), "dedup-" + buildNumber, JsonPayload.of("{\"deploy_number\":\"" + buildNumber + "\"}"), "test0", buildNumber);
+    }
+
+    private static void awaitUnacknowledged(DeployOutbox outbox, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (outbox.getUnacknowledged() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, outbox.getUnacknowledged());
+    }
+}
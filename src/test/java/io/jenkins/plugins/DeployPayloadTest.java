@@ -0,0 +1,100 @@
+package io.jenkins.plugins;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+public class DeployPayloadTest {
+
+    private static final int ITERATIONS = 20000;
+
+    @Test
+    public void testWritesTheSameDocumentAsTheJsonTree() {
+        /* Ensure the streamed payload reads back as the object the DOM builder used to produce */
+        JsonObject json = Json.createReader(new StringReader(payload().toJson())).readObject();
+        Assert.assertEquals(domPayload().toString(), json.toString());
+    }
+
+    @Test
+    public void testSkipsUnsetFieldsAndKeepsSurrogatePairs() {
+        /* Ensure null fields are left out and non-BMP characters survive the UTF-8 encoding */
+        DeployPayload payload = new DeployPayload("id", "1", null, null, "ship it \uD83D\uDE80", "Production",
+            "jenkins:test0", null, new DeployPayload.Commit("38d02f1", null, null));
+        Assert.assertEquals("{\"dedup_id\":\"id\",\"deploy_number\":\"1\",\"description\":\"ship it \uD83D\uDE80\","
+            + "\"environment\":\"Production\",\"service\":\"jenkins:test0\",\"commit\":{\"sha\":\"38d02f1\"}}",
+            payload.toJson());
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void testStreamingAllocatesLessThanTheJsonTree() throws IOException {
+        /* Ensure writing a deploy into the request allocates less than building a JsonObject, a String and a byte[] */
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        BufferedSink sink = Okio.buffer(Okio.blackhole());
+        MediaType json = MediaType.parse("application/json; charset=utf-8");
+
+        long tree = 0;
+        long streamed = 0;
+        // The first round warms up both paths
+        for (int round = 0; round < 2; round++) {
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < ITERATIONS; i++) {
+                RequestBody.create(json, domPayload().toString()).writeTo(sink);
+                sink.flush();
+            }
+            tree = (threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before) / ITERATIONS;
+
+            before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < ITERATIONS; i++) {
+                new JsonPayloadBody(payload()).writeTo(sink);
+                sink.flush();
+            }
+            streamed = (threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before) / ITERATIONS;
+        }
+
+        System.out.println("Bytes allocated per deploy: JsonObject + String " + tree + ", streamed " + streamed);
+        Assert.assertTrue(streamed < tree);
+    }
+
+    private static DeployPayload payload() {
+        return new DeployPayload("9ae54794-dfc5-4ac8-b1b5-78789f20f3f8", "234", "https://jenkins.example.org/job/cart/234/",
+            "2021-03-24T18:03:52Z", "Merge branch 'fix-tax-rate' into 'master'", "Production", "shopping_cart",
+            new DeployPayload.Deployer(null, "Michael Scott", "mscott@example.com"),
+            new DeployPayload.Commit("38d02f1d7aab64678a7ad3eeb2ad2887ce7253f5", "master",
+                "Merge branch 'fix-tax-rate' into 'master'"));
+    }
+
+    // What JobListener used to build for every deploy
+    private static JsonObject domPayload() {
+        JsonObjectBuilder payload = Json.createObjectBuilder();
+        payload.add("dedup_id", "9ae54794-dfc5-4ac8-b1b5-78789f20f3f8");
+        payload.add("deploy_number", "234");
+        payload.add("deploy_url", "https://jenkins.example.org/job/cart/234/");
+        payload.add("deployed_at", "2021-03-24T18:03:52Z");
+        payload.add("description", "Merge branch 'fix-tax-rate' into 'master'");
+        payload.add("environment", "Production");
+        payload.add("service", "shopping_cart");
+        payload.add("deployer", Json.createObjectBuilder()
+            .add("name", "Michael Scott")
+            .add("email", "mscott@example.com"));
+        payload.add("commit", Json.createObjectBuilder()
+            .add("sha", "38d02f1d7aab64678a7ad3eeb2ad2887ce7253f5")
+            .add("branch", "master")
+            .add("message", "Merge branch 'fix-tax-rate' into 'master'"));
+        return payload.build();
+    }
+}
@@ -0,0 +1,146 @@
+package io.jenkins.plugins;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class FlightEventsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MockWebServer server = new MockWebServer();
+    private final OkHttpClient client = new OkHttpClient.Builder()
+        .eventListenerFactory(DeliveryEventListener.FACTORY)
+        .build();
+
+    @Before
+    public void startServer() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.shutdown();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private void post(String jobName, int buildNumber) throws Exception {
+        JsonPayload payload = JsonPayload.of("{\"service\":\"cart\"}");
+        DeployEvent event = new DeployEvent(server.url("/").toString(), "dedup", payload, jobName, buildNumber);
+        Request request = new Request.Builder()
+            .url(server.url("/"))
+            .post(new JsonPayloadBody(payload))
+            .tag(DeployEvent.class, event)
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            response.body().string();
+        }
+    }
+
+    @Test
+    public void testNothingBeginsWithoutARecording() {
+        /* Ensure stages cost a flag check while Flight Recorder is not recording */
+        Assert.assertFalse(FlightEvents.isRecording());
+        Assert.assertNull(FlightEvents.begin(FlightEvents.PAYLOAD_BUILD));
+        // Safe to hand back whatever begin returned
+        FlightEvents.commit(null, "cart", 1, 0);
+    }
+
+    @Test
+    public void testEndedEventsKeepTheirDuration() throws Exception {
+        /* Ensure what happens between end and commitEnded, like serializing a payload to size it, is not in the duration */
+        File dump = new File(folder.getRoot(), "payload.jfr");
+        long ended;
+        try (Recording recording = new Recording()) {
+            recording.enable("io.jenkins.plugins.opslevel.PayloadBuild");
+            recording.start();
+
+            long start = System.nanoTime();
+            Object payload = FlightEvents.begin(FlightEvents.PAYLOAD_BUILD);
+            Assert.assertNotNull(payload);
+            Thread.sleep(10);
+            FlightEvents.end(payload);
+            ended = System.nanoTime() - start;
+            Thread.sleep(200);
+            FlightEvents.commitEnded(payload, "cart", 7, 512);
+
+            recording.stop();
+            recording.dump(dump.toPath());
+        }
+
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+            if (event.getEventType().getName().equals("io.jenkins.plugins.opslevel.PayloadBuild")) {
+                events.add(event);
+            }
+        }
+        Assert.assertEquals(1, events.size());
+        long duration = events.get(0).getDuration().toNanos();
+        Assert.assertTrue("Duration " + duration + " ns includes the time after end", duration <= ended);
+        Assert.assertTrue(duration >= TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(512, events.get(0).getLong("bytes"));
+        Assert.assertEquals(7, events.get(0).getInt("buildNumber"));
+    }
+
+    @Test
+    public void testRecordsDeliveries() throws Exception {
+        /* Ensure an HTTP delivery shows up in a recording with its job, build, size and status */
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        post("before", 1);
+
+        File dump = new File(folder.getRoot(), "deploys.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("io.jenkins.plugins.opslevel.HttpDelivery");
+            recording.enable("io.jenkins.plugins.opslevel.TemplateSubstitution");
+            recording.start();
+            Assert.assertTrue(FlightEvents.isRecording());
+
+            post("cart", 42);
+            Object template = FlightEvents.begin(FlightEvents.TEMPLATE);
+            Assert.assertNotNull(template);
+            FlightEvents.commit(template, "cart", 42, 7);
+
+            recording.stop();
+            recording.dump(dump.toPath());
+        }
+        Assert.assertFalse(FlightEvents.isRecording());
+
+        List<RecordedEvent> http = new ArrayList<>();
+        List<RecordedEvent> templates = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+            String name = event.getEventType().getName();
+            if (name.equals("io.jenkins.plugins.opslevel.HttpDelivery")) {
+                http.add(event);
+            } else if (name.equals("io.jenkins.plugins.opslevel.TemplateSubstitution")) {
+                templates.add(event);
+            }
+        }
+        Assert.assertEquals(1, http.size());
+        Assert.assertEquals("cart", http.get(0).getString("jobName"));
+        Assert.assertEquals(42, http.get(0).getInt("buildNumber"));
+        Assert.assertEquals(18, http.get(0).getLong("bytes"));
+        Assert.assertEquals(200, http.get(0).getInt("status"));
+        Assert.assertEquals(server.getHostName(), http.get(0).getString("host"));
+        Assert.assertEquals(1, templates.size());
+        Assert.assertEquals(7, templates.get(0).getLong("bytes"));
+    }
+}
@@ -0,0 +1,84 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class GitCommandReaderTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    GitCommandReader reader = new GitCommandReader(10000, 64 * 1024);
+    File workTree;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue("git is not installed", gitAvailable());
+        workTree = unzip(tmp, "/project-with-git.zip");
+    }
+
+    @Test
+    public void testReadsOnlyTheCommitFields() throws Exception {
+        /* Ensure the commit's subject, author and committer are read without the diff */
+        CommitRecord commit = reader.read(workTree, "500ca67ed52a9ca20f3181e618347e61f86a0625");
+        Assert.assertNotNull(commit);
+        Assert.assertEquals("500ca67ed52a9ca20f3181e618347e61f86a0625", commit.sha);
+        Assert.assertEquals("Fix typo", commit.subject);
+        Assert.assertFalse(commit.authorName.isEmpty());
+        Assert.assertTrue(commit.authorTime > 0);
+        Assert.assertTrue(commit.commitTime >= commit.authorTime);
+    }
+
+    @Test
+    public void testUnknownOrInvalidCommit() throws Exception {
+        /* Ensure bad input gives no commit rather than an error, and is never passed to git as an option */
+        Assert.assertNull(reader.read(workTree, "0000000000000000000000000000000000000000"));
+        Assert.assertNull(reader.read(workTree, "--output=/tmp/pwned"));
+        Assert.assertNull(reader.read(tmp.newFolder("not-a-repo"), "500ca67ed52a9ca20f3181e618347e61f86a0625"));
+    }
+
+    @Test
+    public void testParsesFormattedOutput() {
+        /* Ensure the NUL separated format is parsed and truncated output is rejected */
+        CommitRecord commit = GitCommandReader.parse("abc1234\u0000Fix typo\u0000Ann\u0000ann@example.org\u00001622000000"
+            + "\u0000Bob\u0000bob@example.org\u00001622000100\n");
+        Assert.assertEquals("Fix typo", commit.subject);
+        Assert.assertEquals("bob@example.org", commit.committerEmail);
+        Assert.assertEquals(1622000100, commit.commitTime);
+        Assert.assertNull(GitCommandReader.parse("abc1234\u0000Fix typo\u0000Ann"));
+    }
+
+    static boolean gitAvailable() {
+        try {
+            return new ProcessBuilder("git", "--version").start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    static File unzip(TemporaryFolder tmp, String resource) throws Exception {
+        File dir = tmp.newFolder("repo");
+        try (InputStream in = GitCommandReaderTest.class.getResourceAsStream(resource); ZipInputStream zip = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                File file = new File(dir, entry.getName());
+                if (entry.isDirectory()) {
+                    file.mkdirs();
+                } else {
+                    file.getParentFile().mkdirs();
+                    Files.copy(zip, file.toPath());
+                }
+            }
+        }
+        return dir;
+    }
+}
@@ -0,0 +1,198 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GitObjectReaderTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // Enough for git to store most commits and files as deltas
+    private static final int COMMITS = 200;
+    private static final int LARGE_COMMITS = 2000;
+
+    @Test
+    public void testReadsLooseObjectsAndRefs() throws Exception {
+        /* Ensure a fresh checkout, which only has loose objects, is read without git */
+        File workTree = GitCommandReaderTest.unzip(tmp, "/project-with-git.zip");
+        try (GitObjectReader reader = new GitObjectReader(GitObjectReader.findGitDir(workTree))) {
+            Assert.assertEquals("500ca67ed52a9ca20f3181e618347e61f86a0625", reader.resolve("HEAD"));
+            Assert.assertEquals("500ca67ed52a9ca20f3181e618347e61f86a0625", reader.resolve("master"));
+
+            CommitRecord commit = reader.readCommit("500ca67ed52a9ca20f3181e618347e61f86a0625");
+            Assert.assertEquals("Fix typo", commit.subject);
+            Assert.assertFalse(commit.authorName.isEmpty());
+            Assert.assertTrue(commit.authorEmail.contains("@"));
+            Assert.assertTrue(commit.commitTime > 0);
+
+            Assert.assertNull(reader.readCommit("0000000000000000000000000000000000000000"));
+            Assert.assertNull(reader.readCommit("no-such-branch"));
+        }
+    }
+
+    @Test
+    public void testReadsPacksDeltasAndPackedRefs() throws Exception {
+        /* Ensure every object of a packed, deltified repository reads back exactly as git prints it */
+        Assume.assumeTrue("git is not installed", GitCommandReaderTest.gitAvailable());
+        File workTree = createPackedRepository(COMMITS);
+
+        try (GitObjectReader reader = new GitObjectReader(GitObjectReader.findGitDir(workTree))) {
+            String head = git(workTree, "rev-parse", "HEAD").trim();
+            Assert.assertEquals(head, reader.resolve("HEAD"));
+            Assert.assertEquals(head, reader.resolve("refs/heads/master"));
+            Assert.assertEquals(git(workTree, "rev-parse", "v1^{commit}").trim(), reader.readCommit("v1").sha);
+
+            // Blobs are the objects git deltifies most, every version of the file goes through delta resolution
+            for (String line : git(workTree, "rev-list", "--objects", "--all").split("\n")) {
+                String sha = line.split(" ")[0];
+                String type = git(workTree, "cat-file", "-t", sha).trim();
+                if (!type.equals("tree")) {
+                    Assert.assertEquals(sha, git(workTree, "cat-file", type, sha),
+                        new String(reader.readObject(sha).data, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        Assert.assertTrue(git(workTree, "verify-pack", "-v", packIndex(workTree).getPath()).contains("chain length"));
+    }
+
+    @Test
+    public void testMatchesGitLog() throws Exception {
+        /* Ensure reading in process gives what git log gives, field by field */
+        Assume.assumeTrue("git is not installed", GitCommandReaderTest.gitAvailable());
+        File workTree = createPackedRepository(COMMITS);
+        GitCommandReader command = new GitCommandReader(10000, 64 * 1024);
+        File gitDir = GitObjectReader.findGitDir(workTree);
+
+        for (String line : git(workTree, "rev-list", "--max-count=5", "HEAD").split("\n")) {
+            String sha = line.trim();
+            CommitRecord expected = command.read(workTree, sha);
+            CommitRecord actual;
+            try (GitObjectReader reader = new GitObjectReader(gitDir)) {
+                actual = reader.readCommit(sha);
+            }
+            Assert.assertEquals(expected.sha, actual.sha);
+            Assert.assertEquals(expected.subject, actual.subject);
+            Assert.assertEquals(expected.authorName, actual.authorName);
+            Assert.assertEquals(expected.authorEmail, actual.authorEmail);
+            Assert.assertEquals(expected.authorTime, actual.authorTime);
+            Assert.assertEquals(expected.committerName, actual.committerName);
+            Assert.assertEquals(expected.committerEmail, actual.committerEmail);
+            Assert.assertEquals(expected.commitTime, actual.commitTime);
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void testBenchmarkAgainstGitProcess() throws Exception {
+        /* Ensure reading in process gives what git log gives, and compare the cost of both on a large repository */
+        Assume.assumeTrue("git is not installed", GitCommandReaderTest.gitAvailable());
+        File workTree = createPackedRepository(LARGE_COMMITS);
+        List<String> shas = new ArrayList<>();
+        for (String sha : git(workTree, "rev-list", "--max-count=100", "HEAD").split("\n")) {
+            shas.add(sha.trim());
+        }
+
+        GitCommandReader command = new GitCommandReader(10000, 64 * 1024);
+        long start = System.nanoTime();
+        List<CommitRecord> forked = new ArrayList<>();
+        for (String sha : shas) {
+            forked.add(command.read(workTree, sha));
+        }
+        long forkNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<CommitRecord> read = new ArrayList<>();
+        File gitDir = GitObjectReader.findGitDir(workTree);
+        for (String sha : shas) {
+            // A reader per commit, as for a deploy
+            try (GitObjectReader reader = new GitObjectReader(gitDir)) {
+                read.add(reader.readCommit(sha));
+            }
+        }
+        long readNanos = System.nanoTime() - start;
+
+        for (int i = 0; i < shas.size(); i++) {
+            Assert.assertEquals(forked.get(i).sha, read.get(i).sha);
+            Assert.assertEquals(forked.get(i).subject, read.get(i).subject);
+        }
+        System.out.println(String.format("Commit lookup over %d commits of a %d commit repository: git log %.2f ms, in process %.3f ms",
+            shas.size(), LARGE_COMMITS, forkNanos / 1e6 / shas.size(), readNanos / 1e6 / shas.size()));
+    }
+
+    private File createPackedRepository(int commits) throws Exception {
+        File workTree = tmp.newFolder("packed");
+        git(workTree, "init", "-q");
+
+        // fast-import writes all commits in one go, each changing one line of a file that grows
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        StringBuilder file = new StringBuilder();
+        for (int i = 1; i <= commits; i++) {
+            file.append("line ").append(i).append(" of the generated file\n");
+            String message = "Change " + i + "\n\nBody of change " + i + "\nwrapped over two lines\n";
+            StringBuilder commit = new StringBuilder()
+                .append("commit refs/heads/master\n")
+                .append("author Ann Author <ann@example.org> ").append(1600000000L + i * 60).append(" +0200\n")
+                .append("committer Cid Committer <cid@example.org> ").append(1600000000L + i * 60 + 30).append(" -0500\n")
+                .append("data ").append(message.getBytes(StandardCharsets.UTF_8).length).append('\n').append(message)
+                .append("M 644 inline generated.txt\n")
+                .append("data ").append(file.toString().getBytes(StandardCharsets.UTF_8).length).append('\n').append(file)
+                .append('\n');
+            if (i == commits / 2) {
+                commit.append("tag v1\nfrom refs/heads/master\ntagger Ann Author <ann@example.org> 1600000000 +0000\ndata 8\nRelease\n\n");
+            }
+            stream.write(commit.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        run(workTree, stream.toByteArray(), "git", "fast-import", "--quiet");
+        git(workTree, "repack", "-adq", "--depth=50", "--window=50");
+        git(workTree, "pack-refs", "--all");
+        git(workTree, "symbolic-ref", "HEAD", "refs/heads/master");
+        Assert.assertFalse(new File(workTree, ".git/refs/heads/master").exists());
+        return workTree;
+    }
+
+    private static File packIndex(File workTree) {
+        File[] indexes = new File(workTree, ".git/objects/pack").listFiles((dir, name) -> name.endsWith(".idx"));
+        Assert.assertNotNull(indexes);
+        Assert.assertEquals(1, indexes.length);
+        return indexes[0];
+    }
+
+    private static String git(File workTree, String... args) throws Exception {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        return run(workTree, null, command);
+    }
+
+    private static String run(File workTree, byte[] input, String... command) throws Exception {
+        Process process = new ProcessBuilder(command).directory(workTree).redirectErrorStream(true).start();
+        try (OutputStream stdin = process.getOutputStream()) {
+            if (input != null) {
+                stdin.write(input);
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream stdout = process.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stdout.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        }
+        String text = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        Assert.assertEquals(String.join(" ", command) + ": " + text, 0, process.waitFor());
+        return text;
+    }
+}
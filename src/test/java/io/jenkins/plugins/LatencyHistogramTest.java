@@ -0,0 +1,43 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        /* Ensure every value falls in a bucket whose bounds contain it and buckets are contiguous */
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucket(value);
+            Assert.assertTrue(value + " below bucket " + bucket, LatencyHistogram.lowerBound(bucket) <= value);
+            Assert.assertTrue(value + " above bucket " + bucket, LatencyHistogram.upperBound(bucket) >= value);
+        }
+        for (int bucket = 1; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            Assert.assertEquals(LatencyHistogram.upperBound(bucket - 1) + 1, LatencyHistogram.lowerBound(bucket));
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        /* Ensure percentiles are reported within 12.5% of the recorded values */
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentileNanos(50));
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getMaxNanos());
+        long median = histogram.getPercentileNanos(50);
+        Assert.assertTrue(median >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assert.assertTrue(median <= TimeUnit.MILLISECONDS.toNanos(50) * 9 / 8);
+        long p99 = histogram.getPercentileNanos(99);
+        Assert.assertTrue(p99 >= TimeUnit.MILLISECONDS.toNanos(99));
+        Assert.assertTrue(p99 <= TimeUnit.MILLISECONDS.toNanos(100));
+        Assert.assertEquals("100.0", histogram.getMaxMillis());
+    }
+}
@@ -0,0 +1,180 @@
+package io.jenkins.plugins;
+
+import hudson.model.queue.QueueTaskFuture;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+public class OpsLevelDeployStepTest {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // A commit of the repository in project-with-git.zip
+    private static final String SHA = "500ca67ed52a9ca20f3181e618347e61f86a0625";
+
+    MockWebServer server = new MockWebServer();
+
+    @Before
+    public void startServer() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.shutdown();
+    }
+
+    private static JsonObject readPayload(RecordedRequest request) {
+        JsonReader jsonReader = Json.createReader(new StringReader(request.getBody().readUtf8()));
+        JsonObject payload = jsonReader.readObject();
+        jsonReader.close();
+        return payload;
+    }
+
+    @Test
+    public void testPublishesFromPipeline() throws Exception {
+        /* Ensure the step sends a deploy with its overrides and returns the outcome */
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "cart");
+        job.setDefinition(new CpsFlowDefinition(
+            "def outcome = opslevelDeploy webHookUrl: '" + server.url("") + "', environment: 'staging',"
+                + " description: 'Deploy #${BUILD_NUMBER}'\n"
+                + "echo \"outcome=${outcome}\"", true));
+
+        WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+        jenkins.assertLogContains("Publishing deploy to OpsLevel via: " + server.url(""), run);
+        jenkins.assertLogContains("outcome=delivered, HTTP 200", run);
+
+        JsonObject payload = readPayload(server.takeRequest());
+        Assert.assertEquals(payload.getString("environment"), "staging");
+        Assert.assertEquals(payload.getString("description"), "Deploy #1");
+        Assert.assertEquals(payload.getString("service"), "jenkins:cart");
+        Assert.assertEquals(payload.getString("deploy_number"), "1");
+    }
+
+    /**
+     * Answers every request once released, counting the requests that arrived.
+     */
+    private static final class HeldDispatcher extends Dispatcher {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch arrived;
+
+        HeldDispatcher(int expected) {
+            arrived = new CountDownLatch(expected);
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            arrived.countDown();
+            release.await(60, TimeUnit.SECONDS);
+            return new MockResponse().setBody("{\"result\": \"ok\"}");
+        }
+    }
+
+    @Test
+    public void testReturnsBeforeDeliveryWithoutWaiting() throws Exception {
+        /* Ensure wait: false lets the Pipeline finish while OpsLevel has not answered yet */
+        HeldDispatcher held = new HeldDispatcher(1);
+        server.setDispatcher(held);
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "cart");
+        job.setDefinition(new CpsFlowDefinition(
+            "echo \"cart=${opslevelDeploy(webHookUrl: '" + server.url("/cart") + "', wait: false)}\"", true));
+
+        try {
+            WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+            jenkins.assertLogContains("cart=queued", run);
+            // The build is over and the response is still held
+            Assert.assertEquals(1, held.release.getCount());
+        } finally {
+            held.release.countDown();
+        }
+
+        RecordedRequest request = server.takeRequest(10, TimeUnit.SECONDS);
+        Assert.assertNotNull(request);
+        Assert.assertEquals("jenkins:cart", readPayload(request).getString("service"));
+    }
+
+    @Test
+    public void testParallelBranchesDeliverSideBySide() throws Exception {
+        /* Ensure a branch waiting for OpsLevel does not hold up the step in another parallel branch */
+        HeldDispatcher held = new HeldDispatcher(2);
+        server.setDispatcher(held);
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "monorepo");
+        job.setDefinition(new CpsFlowDefinition(
+            "parallel cart: {\n"
+                + "  echo \"cart=${opslevelDeploy(webHookUrl: '" + server.url("/cart") + "', serviceAlias: 'cart')}\"\n"
+                + "}, tax: {\n"
+                + "  echo \"tax=${opslevelDeploy(webHookUrl: '" + server.url("/tax") + "', serviceAlias: 'tax')}\"\n"
+                + "}", true));
+
+        QueueTaskFuture<WorkflowRun> build = job.scheduleBuild2(0);
+        boolean bothArrived;
+        try {
+            // Neither response is sent before both requests are in, so serialized steps would never get here
+            bothArrived = held.arrived.await(30, TimeUnit.SECONDS);
+        } finally {
+            held.release.countDown();
+        }
+        Assert.assertTrue("Both branches were sending at the same time", bothArrived);
+
+        WorkflowRun run = jenkins.assertBuildStatusSuccess(build);
+        jenkins.assertLogContains("cart=delivered, HTTP 200", run);
+        jenkins.assertLogContains("tax=delivered, HTTP 200", run);
+        Set<String> services = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            RecordedRequest request = server.takeRequest(10, TimeUnit.SECONDS);
+            services.add(request.getRequestUrl().encodedPath() + "=" + readPayload(request).getString("service"));
+        }
+        Assert.assertTrue(services.contains("/cart=cart"));
+        Assert.assertTrue(services.contains("/tax=tax"));
+    }
+
+    @Test
+    public void testSendsTheCheckedOutCommit() throws Exception {
+        /* Ensure the commit of a checkout step is deployed, though checkout does not export GIT_COMMIT */
+        Assume.assumeTrue("git is not installed", GitCommandReaderTest.gitAvailable());
+        File repo = GitCommandReaderTest.unzip(tmp, "/project-with-git.zip");
+        System.setProperty("hudson.plugins.git.GitSCM.ALLOW_LOCAL_CHECKOUT", "true");
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "cart");
+        job.setDefinition(new CpsFlowDefinition(
+            "node {\n"
+                + "  checkout([$class: 'GitSCM', branches: [[name: '" + SHA + "']],"
+                + " userRemoteConfigs: [[url: '" + repo.getAbsolutePath().replace("\\", "/") + "']]])\n"
+                + "  opslevelDeploy webHookUrl: '" + server.url("") + "'\n"
+                + "}", true));
+
+        jenkins.buildAndAssertSuccess(job);
+
+        JsonObject commit = readPayload(server.takeRequest(10, TimeUnit.SECONDS)).getJsonObject("commit");
+        Assert.assertNotNull(commit);
+        Assert.assertEquals(SHA, commit.getString("sha"));
+        Assert.assertEquals("Fix typo", commit.getString("message"));
+        Assert.assertTrue(commit.containsKey("author_name"));
+    }
+}
@@ -0,0 +1,94 @@
+package io.jenkins.plugins;
+
+import com.gargoylesoftware.htmlunit.html.HtmlForm;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class OpsLevelGlobalConfigurationTest {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    MockWebServer server = new MockWebServer();
+
+    @Before
+    public void startServer() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testSavedTimeoutReachesTheClient() throws Exception {
+        /* Ensure a timeout saved on the configure page is written and used by the client built after it */
+        OpsLevelGlobalConfiguration config = OpsLevelGlobalConfiguration.get();
+        OkHttpClient before = config.getHttpClient();
+
+        HtmlForm form = jenkins.createWebClient().goTo("configure").getFormByName("config");
+        form.getInputByName("_.httpReadTimeoutMillis").setValueAttribute("1234");
+        jenkins.submit(form);
+
+        Assert.assertEquals(1234, config.getHttpReadTimeoutMillis());
+        Assert.assertEquals(1234, new OpsLevelGlobalConfiguration().getHttpReadTimeoutMillis());
+        OkHttpClient after = config.getHttpClient();
+        Assert.assertNotSame(before, after);
+        Assert.assertSame(after, config.getHttpClient());
+        Assert.assertEquals(1234, after.readTimeoutMillis());
+        // Nothing was running on the old client
+        Assert.assertTrue(before.dispatcher().executorService().isShutdown());
+    }
+
+    @Test
+    public void testRetiredClientFinishesItsCalls() throws Exception {
+        /* Ensure the old client's threads stop only once the call running on it has its answer */
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}").setBodyDelay(1, TimeUnit.SECONDS));
+        OpsLevelGlobalConfiguration config = OpsLevelGlobalConfiguration.get();
+        OkHttpClient before = config.getHttpClient();
+        CountDownLatch answered = new CountDownLatch(1);
+        int[] code = {0};
+        before.newCall(new Request.Builder().url(server.url("/")).build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                answered.countDown();
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try (Response r = response) {
+                    r.body().string();
+                    code[0] = r.code();
+                }
+                answered.countDown();
+            }
+        });
+        Assert.assertNotNull(server.takeRequest(10, TimeUnit.SECONDS));
+
+        config.setHttpReadTimeoutMillis(20000);
+        Assert.assertFalse(before.dispatcher().executorService().isShutdown());
+
+        Assert.assertTrue(answered.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(200, code[0]);
+        for (int i = 0; i < 100 && !before.dispatcher().executorService().isShutdown(); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(before.dispatcher().executorService().isShutdown());
+        Assert.assertEquals(20000, config.getHttpClient().readTimeoutMillis());
+    }
+}
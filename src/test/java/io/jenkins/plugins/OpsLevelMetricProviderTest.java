@@ -0,0 +1,48 @@
+package io.jenkins.plugins;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class OpsLevelMetricProviderTest {
+
+    @Test
+    public void testTimerReadsTheHistogram() {
+        /* Ensure a timer reports the histogram's count and distribution in nanoseconds */
+        LatencyHistogram histogram = new LatencyHistogram();
+        OpsLevelMetricProvider.HistogramTimer timer = new OpsLevelMetricProvider.HistogramTimer(histogram);
+        Assert.assertEquals(0, timer.getCount());
+        Assert.assertEquals(0, timer.getSnapshot().size());
+        Assert.assertEquals(0, timer.getSnapshot().getValues().length);
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        Snapshot snapshot = timer.getSnapshot();
+        Assert.assertEquals(100, timer.getCount());
+        Assert.assertEquals(100, snapshot.size());
+        Assert.assertEquals(histogram.getPercentileNanos(50), (long) snapshot.getMedian());
+        Assert.assertEquals(histogram.getPercentileNanos(99), (long) snapshot.get99thPercentile());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getMax());
+        Assert.assertTrue(snapshot.getMin() <= TimeUnit.MILLISECONDS.toNanos(1));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(1) * 101 / 2, snapshot.getMean(), 1);
+        Assert.assertTrue(snapshot.getStdDev() > 0);
+        long[] values = snapshot.getValues();
+        Assert.assertEquals(100, values.length);
+        for (int i = 1; i < values.length; i++) {
+            Assert.assertTrue(values[i - 1] <= values[i]);
+        }
+    }
+
+    @Test
+    public void testCounterReadsTheSource() {
+        /* Ensure a counter view follows the value it wraps */
+        long[] sent = {3};
+        OpsLevelMetricProvider.CounterView counter = new OpsLevelMetricProvider.CounterView(() -> sent[0]);
+        Assert.assertEquals(3, counter.getCount());
+        sent[0] = 5;
+        Assert.assertEquals(5, counter.getCount());
+    }
+}
@@ -0,0 +1,51 @@
+package io.jenkins.plugins;
+
+import com.gargoylesoftware.htmlunit.Page;
+import jenkins.model.Jenkins;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockAuthorizationStrategy;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class OpsLevelPrometheusActionTest {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Before
+    public void denyAnonymous() {
+        jenkins.jenkins.setSecurityRealm(jenkins.createDummySecurityRealm());
+        jenkins.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy()
+            .grant(Jenkins.READ).everywhere().to("scraper"));
+    }
+
+    private Page scrape(JenkinsRule.WebClient client) throws Exception {
+        client.setThrowExceptionOnFailingStatusCode(false);
+        return client.goTo("opslevel-prometheus/", null);
+    }
+
+    @Test
+    public void testAnonymousScrapeNeedsTheSetting() throws Exception {
+        /* Ensure a scraper without an account is turned away until anonymous reads are allowed */
+        Assert.assertFalse(OpsLevelGlobalConfiguration.get().isPrometheusAnonymousRead());
+        Assert.assertEquals(403, scrape(jenkins.createWebClient()).getWebResponse().getStatusCode());
+
+        OpsLevelGlobalConfiguration.get().setPrometheusAnonymousRead(true);
+        Page page = scrape(jenkins.createWebClient());
+        Assert.assertEquals(200, page.getWebResponse().getStatusCode());
+        assertThat(page.getWebResponse().getContentType(), containsString("text/plain"));
+        assertThat(page.getWebResponse().getContentAsString(), containsString("# TYPE opslevel_http_request_duration_seconds histogram"));
+    }
+
+    @Test
+    public void testScrapeWithReadPermission() throws Exception {
+        /* Ensure a user with Overall/Read can scrape whatever the setting */
+        Page page = scrape(jenkins.createWebClient().login("scraper"));
+        Assert.assertEquals(200, page.getWebResponse().getStatusCode());
+        assertThat(page.getWebResponse().getContentAsString(), containsString("opslevel_http_responses_total"));
+    }
+}
@@ -0,0 +1,105 @@
+package io.jenkins.plugins;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+public class PrometheusFormatTest {
+
+    private final MockWebServer server = new MockWebServer();
+    private final OkHttpClient client = new OkHttpClient.Builder()
+        .eventListenerFactory(DeliveryEventListener.FACTORY)
+        .build();
+
+    @Before
+    public void startServer() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.shutdown();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private int post(String body) throws Exception {
+        Request request = new Request.Builder()
+            .url(server.url("/"))
+            .post(RequestBody.create(body, MediaType.get("application/json")))
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+
+    private static String render() throws Exception {
+        StringWriter out = new StringWriter();
+        PrometheusFormat.write(out, DeliveryMetrics.get(), null);
+        return out.toString();
+    }
+
+    @Test
+    public void testRendersRequestsPerHost() throws Exception {
+        /* Ensure requests made with the plugin's listener show up as latency buckets, status codes and bytes */
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        EndpointStats endpoint = DeliveryMetrics.get().getEndpoint(server.getHostName());
+        long requests = endpoint.getRequests();
+        long ok = endpoint.getStatus(200);
+        long errors = endpoint.getStatus(500);
+        long bytes = endpoint.getBytesSent();
+
+        Assert.assertEquals(200, post("{\"service\":\"cart\"}"));
+        Assert.assertEquals(500, post("{}"));
+
+        String host = server.getHostName();
+        String text = render();
+        Assert.assertTrue(text.contains("# TYPE opslevel_http_request_duration_seconds histogram\n"));
+        Assert.assertTrue(text.contains("opslevel_http_request_duration_seconds_bucket{host=\"" + host + "\",le=\"+Inf\"} "
+            + (requests + 2) + "\n"));
+        Assert.assertTrue(text.contains("opslevel_http_request_duration_seconds_count{host=\"" + host + "\"} "
+            + (requests + 2) + "\n"));
+        Assert.assertTrue(text.contains("opslevel_http_responses_total{host=\"" + host + "\",code=\"200\"} " + (ok + 1) + "\n"));
+        Assert.assertTrue(text.contains("opslevel_http_responses_total{host=\"" + host + "\",code=\"500\"} " + (errors + 1) + "\n"));
+        Assert.assertTrue(text.contains("opslevel_http_request_bytes_total{host=\"" + host + "\"} " + (bytes + 20) + "\n"));
+        Assert.assertTrue(text.contains("# TYPE opslevel_git_lookup_seconds summary\n"));
+        Assert.assertTrue(text.contains("opslevel_git_lookup_seconds{quantile=\"0.99\"} "));
+        Assert.assertTrue(text.contains("# TYPE opslevel_deploys_sent_total counter\n"));
+    }
+
+    @Test
+    public void testBucketsAreCumulative() throws Exception {
+        /* Ensure each bucket counts every request at or under its bound */
+        EndpointStats endpoint = DeliveryMetrics.get().getEndpoint("buckets.example.com");
+        endpoint.recordLatency(1_000_000L);
+        endpoint.recordLatency(200_000_000L);
+        endpoint.recordLatency(60_000_000_000L);
+
+        String text = render();
+        Assert.assertTrue(text.contains("{host=\"buckets.example.com\",le=\"0.005\"} 1\n"));
+        Assert.assertTrue(text.contains("{host=\"buckets.example.com\",le=\"0.1\"} 1\n"));
+        Assert.assertTrue(text.contains("{host=\"buckets.example.com\",le=\"0.25\"} 2\n"));
+        Assert.assertTrue(text.contains("{host=\"buckets.example.com\",le=\"10.0\"} 2\n"));
+        Assert.assertTrue(text.contains("{host=\"buckets.example.com\",le=\"+Inf\"} 3\n"));
+        Assert.assertTrue(text.contains("opslevel_http_request_duration_seconds_sum{host=\"buckets.example.com\"} 60.201\n"));
+    }
+
+    @Test
+    public void testEscapesLabelValues() throws Exception {
+        /* Ensure quotes, backslashes and line feeds cannot break out of a label value */
+        StringWriter out = new StringWriter();
+        PrometheusFormat.escape(out, "a\"b\\c\nd");
+        Assert.assertEquals("a\\\"b\\\\c\\nd", out.toString());
+    }
+}
@@ -0,0 +1,59 @@
+package io.jenkins.plugins;
+
+import hudson.model.FreeStyleProject;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+
+public class PublisherIndexTest {
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private static WebHookPublisher publisher(String url) {
+        return new WebHookPublisher(url, "", "", "", "", "", "", "");
+    }
+
+    @Test
+    public void testFollowsConfigurationChanges() throws Exception {
+        /* Ensure adding, replacing and removing publishers is seen on the next lookup */
+        PublisherIndex index = PublisherIndex.get();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        Assert.assertTrue(index.lookup(project).isEmpty());
+
+        WebHookPublisher first = publisher("https://app.opslevel.com/integrations/deploy/1");
+        project.getPublishersList().add(first);
+        Assert.assertSame(first, index.lookup(project).get(0));
+
+        WebHookPublisher second = publisher("https://app.opslevel.com/integrations/deploy/2");
+        project.getPublishersList().replace(second);
+        Assert.assertSame(second, index.lookup(project).get(0));
+
+        WebHookPublisher third = publisher("https://app.opslevel.com/integrations/deploy/3");
+        project.getPublishersList().add(third);
+        Assert.assertEquals(Arrays.asList(second, third), index.lookup(project));
+
+        project.getPublishersList().clear();
+        project.save();
+        Assert.assertTrue(index.lookup(project).isEmpty());
+    }
+
+    @Test
+    public void testForgetsDeletedProjects() throws Exception {
+        /* Ensure renamed projects keep their publisher and deleted ones leave the index */
+        PublisherIndex index = PublisherIndex.get();
+        FreeStyleProject project = jenkins.createFreeStyleProject("cart");
+        WebHookPublisher publisher = publisher("https://app.opslevel.com/integrations/deploy/1");
+        project.getPublishersList().add(publisher);
+        Assert.assertSame(publisher, index.lookup(project).get(0));
+
+        project.renameTo("checkout");
+        Assert.assertSame(publisher, index.lookup(project).get(0));
+
+        int size = index.size();
+        project.delete();
+        Assert.assertEquals(size - 1, index.size());
+    }
+}
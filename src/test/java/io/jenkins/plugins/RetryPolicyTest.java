@@ -0,0 +1,42 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+public class RetryPolicyTest {
+
+    RetryPolicy policy = new RetryPolicy(100, 1000, 60000);
+
+    @Test
+    public void testRetriesOnlyTransientFailures() {
+        Assert.assertTrue(policy.isRetryable(new DeliveryResult(503, ""), null));
+        Assert.assertTrue(policy.isRetryable(new DeliveryResult(429, ""), null));
+        Assert.assertTrue(policy.isRetryable(null, new CompletionException(new IOException("timeout"))));
+        Assert.assertFalse(policy.isRetryable(new DeliveryResult(404, ""), null));
+        Assert.assertFalse(policy.isRetryable(new DeliveryResult(200, ""), null));
+        Assert.assertFalse(policy.isRetryable(null, new IllegalStateException()));
+    }
+
+    @Test
+    public void testBackoffIsCappedAndJittered() {
+        for (int attempt = 1; attempt < 40; attempt++) {
+            long delay = policy.delayMillis(attempt, null);
+            Assert.assertTrue(delay >= 0);
+            Assert.assertTrue(delay < Math.min(1000, 100L << Math.min(attempt - 1, 30)));
+        }
+    }
+
+    @Test
+    public void testRetryAfterIsALowerBound() {
+        long delay = policy.delayMillis(1, new DeliveryResult(429, "", "5"));
+        Assert.assertEquals(5000, delay);
+
+        Assert.assertEquals(30000, RetryPolicy.parseRetryAfter("Wed, 21 Oct 2015 07:28:30 GMT",
+            java.time.ZonedDateTime.parse("2015-10-21T07:28:00Z").toInstant().toEpochMilli()));
+        Assert.assertEquals(-1, RetryPolicy.parseRetryAfter("soon", 0));
+        Assert.assertEquals(-1, RetryPolicy.parseRetryAfter(null, 0));
+    }
+}
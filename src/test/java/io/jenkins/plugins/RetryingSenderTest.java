@@ -0,0 +1,104 @@
+package io.jenkins.plugins;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RetryingSenderTest {
+
+    MockWebServer server = new MockWebServer();
+    DeployDispatcher dispatcher = new DeployDispatcher(new OkHttpClient());
+    RetryingSender sender;
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (sender != null) {
+            sender.close();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    public void testRetriesTransientFailure() throws Exception {
+        /*
+            Ensure a 503 is repeated after a backoff and the deploy completes with the 200 that follows
+        */
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        sender = new RetryingSender(event -> dispatcher.submit(event, 10), () -> new RetryPolicy(10, 100, 10000));
+
+        DeliveryResult delivered = sender.send(event(server.url("").toString())).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(200, delivered.code);
+        Assert.assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testWaitsForRetryAfter() throws Exception {
+        /*
+            Ensure a Retry-After from OpsLevel holds the next attempt back even when the backoff is shorter
+        */
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        sender = new RetryingSender(event -> dispatcher.submit(event, 10), () -> new RetryPolicy(10, 100, 10000));
+
+        long start = System.nanoTime();
+        Assert.assertEquals(200, sender.send(event(server.url("").toString())).get(10, TimeUnit.SECONDS).code);
+        long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertEquals(2, server.getRequestCount());
+        Assert.assertTrue("Retried after " + took + " ms", took >= 1000);
+    }
+
+    @Test
+    public void testGivesUpAtDeadline() throws Exception {
+        /*
+            Ensure attempts stop at the deadline and the last transient result is reported
+        */
+        for (int i = 0; i < 50; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+        sender = new RetryingSender(event -> dispatcher.submit(event, 10), () -> new RetryPolicy(50, 50, 500));
+
+        long start = System.nanoTime();
+        DeliveryResult delivered = sender.send(event(server.url("").toString())).get(10, TimeUnit.SECONDS);
+        long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertEquals(503, delivered.code);
+        Assert.assertTrue("Gave up after " + took + " ms", took < 2000);
+        Assert.assertTrue(server.getRequestCount() > 1);
+        Assert.assertTrue(server.getRequestCount() < 50);
+    }
+
+    @Test
+    public void testHandOffKeepsDeadline() throws Exception {
+        /*
+            Ensure the time an event spent before being handed to the retrier counts against its deadline
+        */
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        sender = new RetryingSender(event -> dispatcher.submit(event, 10), () -> new RetryPolicy(10, 10, 300));
+        DeployEvent event = event(server.url("").toString());
+
+        // As a build thread that spent the whole deadline on its own attempt
+        Thread.sleep(400);
+        DeliveryResult delivered = sender.retry(event, 1, new DeliveryResult(503, ""), null).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(503, delivered.code);
+        Assert.assertEquals(0, server.getRequestCount());
+    }
+
+    private static DeployEvent event(String webhookUrl) {
+        return new DeployEvent(webhookUrl, "a", JsonPayload.of("{\"dedup_id\":\"a\"}"), "test0", 1);
+    }
+}
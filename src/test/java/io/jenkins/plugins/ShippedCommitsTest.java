@@ -0,0 +1,78 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+public class ShippedCommitsTest {
+
+    private static ShippedCommits.Change change(String sha) {
+        return new ShippedCommits.Change(sha, "Message of " + sha, "Ada", -1);
+    }
+
+    private static String shas(ShippedCommits shipped) {
+        StringBuilder shas = new StringBuilder();
+        for (ShippedCommits.Change change : shipped.changes) {
+            shas.append(change.sha);
+        }
+        return shas.toString();
+    }
+
+    @Test
+    public void testOrdersOldestFirstAcrossBuilds() {
+        /* Ensure builds fed newest first come out as one list, oldest commit first */
+        ShippedCommits.Collector collector = new ShippedCommits.Collector(10);
+        collector.add(change("d"));
+        collector.add(change("e"));
+        collector.endBuild();
+        collector.add(change("a"));
+        collector.add(change("b"));
+        collector.add(change("c"));
+
+        ShippedCommits shipped = collector.finish();
+        Assert.assertEquals("abcde", shas(shipped));
+        Assert.assertFalse(shipped.truncated);
+    }
+
+    @Test
+    public void testKeepsNewestWhenCapped() {
+        /* Ensure only the newest commits are kept, in order, and the list is marked truncated */
+        ShippedCommits.Collector collector = new ShippedCommits.Collector(3);
+        collector.add(change("c"));
+        collector.add(change("d"));
+        collector.endBuild();
+        collector.add(change("a"));
+        collector.add(change("b"));
+
+        ShippedCommits shipped = collector.finish();
+        Assert.assertEquals("bcd", shas(shipped));
+        Assert.assertTrue(shipped.truncated);
+
+        collector = new ShippedCommits.Collector(2);
+        for (char sha = 'a'; sha <= 'z'; sha++) {
+            collector.add(change(String.valueOf(sha)));
+        }
+        Assert.assertEquals("yz", shas(collector.finish()));
+    }
+
+    @Test
+    public void testWritesCommitsArray() {
+        /* Ensure the commits are written as an array, unknown dates are left out and truncation is flagged */
+        ShippedCommits shipped = new ShippedCommits(java.util.Arrays.asList(
+            new ShippedCommits.Change("38d02f1", "Fix tax rate", "Michael Scott", 1616609032000L),
+            new ShippedCommits.Change("500ca67", "Fix typo", null, -1)), true);
+
+        StringWriter out = new StringWriter();
+        try (JsonGenerator json = Json.createGenerator(out)) {
+            json.writeStartObject();
+            shipped.writeTo(json);
+            json.writeEnd();
+        }
+        Assert.assertEquals("{\"commits\":[{\"sha\":\"38d02f1\",\"message\":\"Fix tax rate\","
+            + "\"author_name\":\"Michael Scott\",\"date\":\"2021-03-24T18:03:52Z\"},"
+            + "{\"sha\":\"500ca67\",\"message\":\"Fix typo\"}],\"commits_truncated\":true}", out.toString());
+    }
+}
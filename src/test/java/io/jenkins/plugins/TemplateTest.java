@@ -0,0 +1,44 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TemplateTest {
+
+    Map<String, String> env = new HashMap<>();
+
+    @Test
+    public void testExpandsVariablesInOnePass() {
+        /* Ensure references are replaced and literal parts are kept around them */
+        env.put("BUILD_NUMBER", "7");
+        env.put("JOB_NAME", "cart");
+        Template template = Template.compile("Deploy ${JOB_NAME} #${BUILD_NUMBER}!");
+        Assert.assertFalse(template.isConstant());
+        Assert.assertEquals(Arrays.asList("JOB_NAME", "BUILD_NUMBER"), Arrays.asList(template.getVariables().toArray()));
+        Assert.assertEquals("Deploy cart #7!", template.expand(env));
+    }
+
+    @Test
+    public void testConstantFieldIsReturnedAsIs() {
+        /* Ensure a field without variables expands to the very same string */
+        Template template = Template.compile("Production");
+        Assert.assertTrue(template.isConstant());
+        Assert.assertSame(template.expand(env), template.expand(env));
+        Assert.assertNull(Template.compile(null));
+    }
+
+    @Test
+    public void testDefaultsEscapesAndUnknownVariables() {
+        /* Ensure the StringSubstitutor syntax the fields used before still expands the same way */
+        env.put("ENV", "staging");
+        Assert.assertEquals("staging", Template.compile("${ENV:-Production}").expand(env));
+        Assert.assertEquals("Production", Template.compile("${REGION:-Production}").expand(env));
+        Assert.assertEquals("${ENV} is staging", Template.compile("$${ENV} is ${ENV}").expand(env));
+        Assert.assertEquals("${MISSING}/staging", Template.compile("${MISSING}/${ENV}").expand(env));
+        Assert.assertEquals("cost: $5 {x} ${unclosed", Template.compile("cost: $5 {x} ${unclosed").expand(env));
+    }
+}
@@ -0,0 +1,46 @@
+package io.jenkins.plugins;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTest {
+
+    TokenBucket bucket = new TokenBucket("http://opslevel.example.org/deploy");
+
+    @Test
+    public void testBurstPassesThenCallersQueue() {
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, bucket.reserve(1, 5));
+        }
+        long wait = bucket.reserve(1, 5);
+        Assert.assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900));
+        Assert.assertTrue(wait <= TimeUnit.SECONDS.toNanos(1));
+
+        // Each further caller waits one more token's worth
+        long next = bucket.reserve(1, 5);
+        Assert.assertTrue(next - wait > TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void testTryAcquireDoesNotReserveFutureTokens() {
+        Assert.assertTrue(bucket.tryAcquire(1, 2));
+        Assert.assertTrue(bucket.tryAcquire(1, 2));
+        Assert.assertFalse(bucket.tryAcquire(1, 2));
+        Assert.assertFalse(bucket.tryAcquire(1, 2));
+        Assert.assertEquals(2, bucket.getPassed());
+    }
+
+    @Test
+    public void testRecordsQueueWait() {
+        bucket.onQueued();
+        bucket.onQueued();
+        bucket.onReleased(TimeUnit.MILLISECONDS.toNanos(100));
+        bucket.onReleased(TimeUnit.MILLISECONDS.toNanos(300));
+        Assert.assertEquals(0, bucket.getQueued());
+        Assert.assertEquals(2, bucket.getDelayed());
+        Assert.assertEquals(200, bucket.getAverageWaitMillis());
+        Assert.assertEquals(300, bucket.getMaxWaitMillis());
+    }
+}
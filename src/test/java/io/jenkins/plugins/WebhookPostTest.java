@@ -1,25 +1,36 @@
 package io.jenkins.plugins;
 
 import hudson.EnvVars;
+import hudson.Launcher;
 import hudson.slaves.EnvironmentVariablesNodeProperty;
 import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.ExtractResourceSCM;
+import org.jvnet.hudson.test.FailureBuilder;
+import org.jvnet.hudson.test.FakeChangeLogSCM;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.TestExtension;
 
 import hudson.model.*;
 import org.junit.Assert;
 import okhttp3.mockwebserver.*;
 import javax.json.Json;
+import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
+import java.io.IOException;
 import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public class WebhookPostTest {
@@ -239,6 +250,373 @@ public class WebhookPostTest {
         server.shutdown();
     }
 
+    @Test
+    public void testFallsBackToFullEnvironmentForUncommonVariables() throws Exception {
+        /*
+            Ensure variables only the full build environment provides still expand in templates
+        */
+
+        server.start();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        String webhookUrl = server.url("").toString();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getPublishersList().add(new WebHookPublisher(
+                webhookUrl,
+                "",
+                "${DEPLOY_TARGET:-staging}",
+                "Deployed from ${JENKINS_HOME} by ${BUILD_TAG}",
+                "",
+                "",
+                "",
+                ""
+        ));
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        jenkins.assertBuildStatusSuccess(build);
+
+        RecordedRequest request = server.takeRequest();
+        JsonReader jsonReader = Json.createReader(new StringReader(request.getBody().readUtf8()));
+        JsonObject payload = jsonReader.readObject();
+        jsonReader.close();
+
+        Assert.assertEquals(payload.getString("description"),
+            "Deployed from " + jenkins.jenkins.getRootDir().getPath() + " by jenkins-test0-1");
+        Assert.assertEquals(payload.getString("environment"), "staging");
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testReadsCommitAtCheckout() throws Exception {
+        /*
+            Ensure the commit is read right after checkout, so a build that wipes its workspace still sends it
+        */
+
+        server.start();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        String webhookUrl = server.url("").toString();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getPublishersList().add(new WebHookPublisher(
+                webhookUrl,
+                "",
+                "",
+                "",
+                "",
+                "",
+                "",
+                ""
+        ));
+
+        project.setScm(new ExtractResourceSCM(getClass().getResource("/project-with-git.zip")) {
+            @Override
+            public void buildEnvironment(Run<?, ?> build, Map<String, String> env) {
+                // What the git plugin adds once it has checked out
+                env.put("GIT_COMMIT", "500ca67ed52a9ca20f3181e618347e61f86a0625");
+                env.put("GIT_BRANCH", "origin/master");
+            }
+        });
+        project.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace().deleteContents();
+                return true;
+            }
+        });
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        jenkins.assertBuildStatusSuccess(build);
+        CheckoutCommitAction checkout = build.getAction(CheckoutCommitAction.class);
+        Assert.assertNotNull(checkout);
+        Assert.assertEquals(checkout.record.subject, "Fix typo");
+
+        RecordedRequest request = server.takeRequest();
+        JsonReader jsonReader = Json.createReader(new StringReader(request.getBody().readUtf8()));
+        JsonObject payload = jsonReader.readObject();
+        jsonReader.close();
+
+        JsonObject commitJson = payload.getJsonObject("commit");
+        Assert.assertEquals(commitJson.getString("sha"), "500ca67ed52a9ca20f3181e618347e61f86a0625");
+        Assert.assertEquals(commitJson.getString("branch"), "origin/master");
+        Assert.assertEquals(commitJson.getString("message"), "Fix typo");
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testListsCommitsSinceLastDeploy() throws Exception {
+        /*
+            Ensure a deploy lists the changes of the failed builds before it, and only up to the configured cap
+        */
+
+        server.start();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        String webhookUrl = server.url("").toString();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getPublishersList().add(new WebHookPublisher(
+                webhookUrl,
+                "",
+                "",
+                "",
+                "",
+                "",
+                "",
+                ""
+        ));
+        OpsLevelGlobalConfiguration.get().setMaxShippedCommits(2);
+        FakeChangeLogSCM scm = new FakeChangeLogSCM();
+        project.setScm(scm);
+
+        scm.addChange().withAuthor("alice").withMsg("Add cart");
+        project.getBuildersList().add(new FailureBuilder());
+        jenkins.assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+
+        scm.addChange().withAuthor("bob").withMsg("Fix tax rate");
+        scm.addChange().withAuthor("bob").withMsg("Fix typo");
+        project.getBuildersList().clear();
+        jenkins.assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+
+        RecordedRequest request = server.takeRequest();
+        JsonReader jsonReader = Json.createReader(new StringReader(request.getBody().readUtf8()));
+        JsonObject payload = jsonReader.readObject();
+        jsonReader.close();
+
+        JsonArray commits = payload.getJsonArray("commits");
+        Assert.assertEquals(commits.size(), 2);
+        Assert.assertEquals(commits.getJsonObject(0).getString("message"), "Fix tax rate");
+        Assert.assertEquals(commits.getJsonObject(1).getString("message"), "Fix typo");
+        Assert.assertEquals(commits.getJsonObject(1).getString("author_name"), "bob");
+        Assert.assertTrue(payload.getBoolean("commits_truncated"));
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testPublishesToEveryTarget() throws Exception {
+        /*
+            Ensure every configured publisher gets its own deploy and reports its outcome in the console
+        */
+
+        server.start();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        String cartUrl = server.url("/cart").toString();
+        String taxUrl = server.url("/tax").toString();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getPublishersList().add(new WebHookPublisher(cartUrl, "cart", "", "", "", "", "", ""));
+        project.getPublishersList().add(new WebHookPublisher(taxUrl, "tax", "", "", "", "", "", ""));
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        jenkins.assertBuildStatusSuccess(build);
+
+        String consoleOutput = IOUtils.toString(build.getLogText().readAll());
+        log.debug("Build console output:\n{}", consoleOutput);
+        assertThat(consoleOutput, containsString("Publishing deploy to 2 OpsLevel targets."));
+        assertThat(consoleOutput, containsString("OpsLevel target 1/2 (" + cartUrl + "): delivered, HTTP 200"));
+        assertThat(consoleOutput, containsString("OpsLevel target 2/2 (" + taxUrl + "): delivered, HTTP 200"));
+
+        Map<String, String> services = new HashMap<>();
+        for (int i = 0; i < 2; i++) {
+            RecordedRequest request = server.takeRequest();
+            JsonReader jsonReader = Json.createReader(new StringReader(request.getBody().readUtf8()));
+            JsonObject payload = jsonReader.readObject();
+            jsonReader.close();
+            services.put(request.getRequestUrl().encodedPath(), payload.getString("service"));
+        }
+        Assert.assertEquals(services.get("/cart"), "cart");
+        Assert.assertEquals(services.get("/tax"), "tax");
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testPublishesOnFinalized() throws Exception {
+        /*
+            Ensure deploys can be published after the build is over, and the time the plugin took is recorded
+        */
+
+        server.start();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getPublishersList().add(new WebHookPublisher(server.url("").toString(), "", "", "", "", "", "", ""));
+        OpsLevelGlobalConfiguration.get().setPublishOnFinalized(true);
+        long finalized = DeliveryMetrics.get().getHeldOnFinalized().getCount();
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        jenkins.assertBuildStatusSuccess(build);
+
+        RecordedRequest request = server.takeRequest(10, TimeUnit.SECONDS);
+        Assert.assertNotNull(request);
+        String consoleOutput = IOUtils.toString(build.getLogText().readAll());
+        assertThat(consoleOutput, not(containsString("Publishing deploy to OpsLevel via")));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (build.getAction(PublishLatencyAction.class) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        PublishLatencyAction held = build.getAction(PublishLatencyAction.class);
+        Assert.assertNotNull(held);
+        Assert.assertEquals(held.phase, PublishLatencyAction.FINALIZED);
+        Assert.assertFalse(held.isInBuildDuration());
+        Assert.assertEquals(DeliveryMetrics.get().getHeldOnFinalized().getCount(), finalized + 1);
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testRecordsDeliveryOnBuild() throws Exception {
+        /*
+            Ensure the build keeps the dedup_id, attempts, status and stage timings of its deploy, and reads them back
+        */
+
+        server.start();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getPublishersList().add(new WebHookPublisher(server.url("").toString(), "", "", "", "", "", "", ""));
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        jenkins.assertBuildStatusSuccess(build);
+        RecordedRequest request = server.takeRequest();
+        JsonObject payload = Json.createReader(new StringReader(request.getBody().readUtf8())).readObject();
+
+        DeliveryRecordAction record = build.getAction(DeliveryRecordAction.class);
+        Assert.assertNotNull(record);
+        Assert.assertTrue(record.getEnvNanos() >= 0);
+        Assert.assertEquals(1, record.getDeliveries().size());
+        DeliveryRecordAction.Delivery delivery = record.getDeliveries().get(0);
+        Assert.assertEquals(payload.getString("dedup_id"), delivery.dedupId);
+        Assert.assertEquals(1, delivery.getAttempts());
+        Assert.assertEquals(200, delivery.getCode());
+        Assert.assertEquals("delivered, HTTP 200", delivery.getOutcome());
+        Assert.assertTrue(delivery.getSerializeNanos() >= 0);
+        Assert.assertTrue(delivery.getTtfbNanos() >= 0);
+
+        // As after a restart: the deliveries are only read when asked for
+        DeliveryRecordAction.flush();
+        DeliveryRecordAction loaded = new DeliveryRecordAction();
+        loaded.onLoad(build);
+        Assert.assertEquals(1, loaded.getDeliveries().size());
+        Assert.assertEquals(delivery.dedupId, loaded.getDeliveries().get(0).dedupId);
+        Assert.assertEquals("HTTP 200", loaded.getDeliveries().get(0).getStatus());
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testAsyncDeliveryDoesNotHoldBuild() throws Exception {
+        /*
+            Ensure with async delivery the build completes while OpsLevel is still answering, and the deploy lands later
+        */
+
+        server.start();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}").setHeadersDelay(5, TimeUnit.SECONDS));
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getPublishersList().add(new WebHookPublisher(server.url("").toString(), "", "", "", "", "", "", ""));
+        OpsLevelGlobalConfiguration.get().setAsyncDelivery(true);
+
+        long start = System.nanoTime();
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        long took = System.nanoTime() - start;
+        jenkins.assertBuildStatusSuccess(build);
+        Assert.assertTrue("The build waited " + TimeUnit.NANOSECONDS.toMillis(took) + " ms on OpsLevel",
+            took < TimeUnit.SECONDS.toNanos(5));
+
+        String consoleOutput = IOUtils.toString(build.getLogText().readAll());
+        assertThat(consoleOutput, containsString("Deploy queued for background delivery to OpsLevel."));
+        assertThat(consoleOutput, not(containsString("Response: ")));
+        DeliveryRecordAction.Delivery delivery = build.getAction(DeliveryRecordAction.class).getDeliveries().get(0);
+        Assert.assertEquals("queued", delivery.getOutcome());
+
+        Assert.assertNotNull(server.takeRequest(10, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 15000;
+        while (delivery.getCode() != 200 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(200, delivery.getCode());
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testAsyncDeliveryFallsBackToSyncWhenQueueIsFull() throws Exception {
+        /*
+            Ensure a deploy that does not fit in the background queue is still sent, on the build thread
+        */
+
+        server.start();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}").setHeadersDelay(5, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getPublishersList().add(new WebHookPublisher(server.url("").toString(), "", "", "", "", "", "", ""));
+        OpsLevelGlobalConfiguration.get().setAsyncDelivery(true);
+        OpsLevelGlobalConfiguration.get().setDispatcherQueueCapacity(1);
+
+        // Takes the only slot until OpsLevel answers it
+        FreeStyleBuild queued = project.scheduleBuild2(0).get();
+        jenkins.assertBuildStatusSuccess(queued);
+        Assert.assertNotNull(server.takeRequest(10, TimeUnit.SECONDS));
+
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        jenkins.assertBuildStatusSuccess(build);
+        String consoleOutput = IOUtils.toString(build.getLogText().readAll());
+        log.debug("Build console output:\n{}", consoleOutput);
+        assertThat(consoleOutput, not(containsString("Deploy queued for background delivery to OpsLevel.")));
+        assertThat(consoleOutput, containsString("Response: {\"result\": \"ok\"}"));
+        DeliveryRecordAction.Delivery delivery = build.getAction(DeliveryRecordAction.class).getDeliveries().get(0);
+        Assert.assertEquals("delivered, HTTP 200", delivery.getOutcome());
+        Assert.assertEquals(2, server.getRequestCount());
+
+        server.shutdown();
+    }
+
+    @Test
+    public void testReadsCommitFromEnvironmentContributor() throws Exception {
+        /*
+            Ensure GIT_COMMIT set by an EnvironmentContributor instead of the SCM still reaches the payload
+        */
+
+        server.start();
+        server.enqueue(new MockResponse().setBody("{\"result\": \"ok\"}"));
+        String webhookUrl = server.url("").toString();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.getPublishersList().add(new WebHookPublisher(
+                webhookUrl,
+                "",
+                "",
+                "",
+                "",
+                "",
+                "",
+                ""
+        ));
+        // Checks out without telling the environment what it checked out
+        project.setScm(new ExtractResourceSCM(getClass().getResource("/project-with-git.zip")));
+
+        jenkins.assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+
+        RecordedRequest request = server.takeRequest();
+        JsonReader jsonReader = Json.createReader(new StringReader(request.getBody().readUtf8()));
+        JsonObject payload = jsonReader.readObject();
+        jsonReader.close();
+
+        JsonObject commitJson = payload.getJsonObject("commit");
+        Assert.assertNotNull(commitJson);
+        Assert.assertEquals(commitJson.getString("sha"), "500ca67ed52a9ca20f3181e618347e61f86a0625");
+        Assert.assertEquals(commitJson.getString("branch"), "origin/release");
+
+        server.shutdown();
+    }
+
+    @TestExtension("testReadsCommitFromEnvironmentContributor")
+    public static class GitEnvironmentContributor extends EnvironmentContributor {
+        @Override
+        public void buildEnvironmentFor(Run r, EnvVars envs, TaskListener listener) {
+            // As a plugin wrapping git would
+            envs.put("GIT_COMMIT", "500ca67ed52a9ca20f3181e618347e61f86a0625");
+            envs.put("GIT_BRANCH", "origin/release");
+        }
+    }
+
     private void mockJenkinsEnvVar(String name, String value) {
         EnvironmentVariablesNodeProperty prop = new EnvironmentVariablesNodeProperty();
         EnvVars envVars = prop.getEnvVars();